@@ -0,0 +1,299 @@
+package com.ronhorner.primes;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * <p>
+ * Tests many numbers at once on an executor and returns the answers as a
+ * bitset, bit <i>i</i> being set when number <i>i</i> is prime.
+ * </p>
+ *
+ * <p>
+ * The input is cut into blocks whose length is a multiple of 64, so every
+ * block fills its own words of the result and the workers never share a
+ * word. Numbers held in a <code>long[]</code> are tested with
+ * {@link LongPrimality}, which is exact and allocates nothing. BigIntegers go
+ * to the {@link PrimalityTest} the tester was made with; the tests from
+ * {@link PrimeUtils#getTest(int, int)} keep one witness source per worker
+ * thread instead of seeding one per number.
+ * </p>
+ *
+ * <p>
+ * A {@link NumberFile} is tested in blocks straight from its mapping, the
+ * long section mapped one {@link NumberFile#WINDOW_BYTES} window at a time
+ * and each block a <code>LongBuffer</code> slice of the window, without
+ * copying it onto the heap.
+ * </p>
+ *
+ * @author Ron Horner
+ */
+public class BatchTester {
+
+    /** The default number of numbers read from a stream at a time */
+    public static final int DEFAULT_STREAM_BLOCK = 1 << 16;
+
+    /** The smallest number of numbers given to one task */
+    private static final int MIN_BLOCK = 64 * 16;
+
+    /** The test run on each BigInteger */
+    private final PrimalityTest test;
+
+    /** The executor the blocks run on */
+    private final ExecutorService executor;
+
+    /** The number of tasks to cut each batch into */
+    private final int parallelism;
+
+    /**
+     * Creates a batch tester.
+     *
+     * @param test
+     *            the test to run on each BigInteger, or null when only longs
+     *            are tested
+     * @param executor
+     *            runs the blocks, it is not shut down by this class, or null
+     *            to test on the calling thread
+     * @param parallelism
+     *            the number of threads the executor has
+     */
+    public BatchTester(PrimalityTest test, ExecutorService executor, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Invalid parallelism " + parallelism);
+        }
+        this.test = test;
+        this.executor = executor;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Tests every number in the array.
+     *
+     * @param numbers
+     *            the numbers in question
+     * @return bit i is set if numbers[i] is prime
+     */
+    public BitSet test(final BigInteger[] numbers) {
+        final long[] words = new long[(numbers.length + 63) >>> 6];
+        run(numbers.length, new Block() {
+            public void test(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    if (test.isPrime(numbers[i])) {
+                        words[i >>> 6] |= 1L << i;
+                    }
+                }
+            }
+        });
+        return BitSet.valueOf(words);
+    }
+
+    /**
+     * Tests every number in the array with the exact long test.
+     *
+     * @param numbers
+     *            the numbers in question
+     * @return bit i is set if numbers[i] is prime
+     */
+    public BitSet test(long[] numbers) {
+        return test(LongBuffer.wrap(numbers));
+    }
+
+    /**
+     * Tests every remaining number in the buffer with the exact long test.
+     * The buffer is only read with absolute gets, its position is unchanged.
+     *
+     * @param numbers
+     *            the numbers in question, possibly a view of a mapped file
+     * @return bit i is set if the i-th remaining number is prime
+     */
+    public BitSet test(final LongBuffer numbers) {
+        final int base = numbers.position();
+        final long[] words = new long[(numbers.remaining() + 63) >>> 6];
+        run(numbers.remaining(), new Block() {
+            public void test(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    if (LongPrimality.isPrime(numbers.get(base + i))) {
+                        words[i >>> 6] |= 1L << i;
+                    }
+                }
+            }
+        });
+        return BitSet.valueOf(words);
+    }
+
+    /**
+     * Tests every number in a stream, reading it {@link #DEFAULT_STREAM_BLOCK}
+     * numbers at a time so the whole stream is never held in memory.
+     *
+     * @param numbers
+     *            the numbers in question
+     * @return bit i is set if the i-th number of the stream is prime
+     */
+    public BitSet test(Stream<BigInteger> numbers) {
+        BitSet rval = new BitSet();
+        Iterator<BigInteger> it = numbers.iterator();
+        BigInteger[] block = new BigInteger[DEFAULT_STREAM_BLOCK];
+        int offset = 0;
+        while (it.hasNext()) {
+            int size = 0;
+            while (size < block.length && it.hasNext()) {
+                block[size++] = it.next();
+            }
+            BigInteger[] part = size == block.length ? block : Arrays.copyOf(block, size);
+            BitSet found = test(part);
+            for (int i = found.nextSetBit(0); i >= 0; i = found.nextSetBit(i + 1)) {
+                rval.set(offset + i);
+            }
+            offset += size;
+        }
+        return rval;
+    }
+
+    /**
+     * <p>
+     * Tests every number in a number file, {@link #DEFAULT_STREAM_BLOCK}
+     * numbers at a time, and reports each answer to <i>listener</i> in file
+     * order on the calling thread.
+     * </p>
+     *
+     * @param in
+     *            the numbers in question
+     * @param listener
+     *            receives every number and its answer
+     * @return the number of primes found
+     * @throws IOException
+     *             if the file can not be mapped
+     */
+    public long test(NumberFile in, final Listener listener) throws IOException {
+        long primes = 0;
+        long longCount = in.getLongCount();
+        for (long from = 0; from < longCount; from += NumberFile.WINDOW_BYTES / 8) {
+            // One mapping per window, the blocks are slices of it
+            LongBuffer window = in.longs(from, (int) Math.min(NumberFile.WINDOW_BYTES / 8, longCount - from));
+            for (int start = 0; start < window.capacity(); start += DEFAULT_STREAM_BLOCK) {
+                int end = Math.min(window.capacity(), start + DEFAULT_STREAM_BLOCK);
+                window.limit(end);
+                window.position(start);
+                BitSet found = test(window);
+                for (int i = start; i < end; i++) {
+                    listener.tested(window.get(i), found.get(i - start));
+                }
+                primes += found.cardinality();
+            }
+        }
+
+        final BigInteger[] block = new BigInteger[DEFAULT_STREAM_BLOCK];
+        final int[] size = new int[1];
+        final long[] found = new long[1];
+        in.forEachBig(new Consumer<BigInteger>() {
+            public void accept(BigInteger n) {
+                block[size[0]++] = n;
+                if (size[0] == block.length) {
+                    found[0] += report(block, size[0], listener);
+                    size[0] = 0;
+                }
+            }
+        });
+        found[0] += report(block, size[0], listener);
+        return primes + found[0];
+    }
+
+    /**
+     * Tests the first <i>size</i> numbers of a block and reports them.
+     *
+     * @return the number of primes in the block
+     */
+    private int report(BigInteger[] block, int size, Listener listener) {
+        if (size == 0) {
+            return 0;
+        }
+        BigInteger[] part = size == block.length ? block : Arrays.copyOf(block, size);
+        BitSet found = test(part);
+        for (int i = 0; i < size; i++) {
+            listener.tested(part[i], found.get(i));
+        }
+        return found.cardinality();
+    }
+
+    /**
+     * Receives the answers from {@link BatchTester#test(NumberFile, Listener)}.
+     */
+    public interface Listener {
+
+        /**
+         * @param n
+         *            a number from the long section
+         * @param prime
+         *            true if n is prime
+         */
+        void tested(long n, boolean prime);
+
+        /**
+         * @param n
+         *            a number from the big integer section
+         * @param prime
+         *            true if n is prime
+         */
+        void tested(BigInteger n, boolean prime);
+    }
+
+    /**
+     * A range of indexes for one task.
+     */
+    private interface Block {
+        void test(int from, int to);
+    }
+
+    /**
+     * Cuts [0, length) into blocks aligned to 64 and runs them on the
+     * executor, waiting for all of them, or runs it all on the calling thread
+     * without an executor.
+     */
+    private void run(int length, final Block block) {
+        if (length == 0) {
+            return;
+        }
+        if (executor == null) {
+            block.test(0, length);
+            return;
+        }
+        int size = (length + parallelism * 4 - 1) / (parallelism * 4);
+        size = Math.max(MIN_BLOCK, (size + 63) & ~63);
+        if (size >= length) {
+            block.test(0, length);
+            return;
+        }
+        ArrayList<Future<?>> tasks = new ArrayList<Future<?>>();
+        for (int from = 0; from < length; from += size) {
+            final int start = from;
+            final int end = Math.min(length, from + size);
+            tasks.add(executor.submit(new Callable<Object>() {
+                public Object call() {
+                    block.test(start, end);
+                    return null;
+                }
+            }));
+        }
+        try {
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while testing a batch", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("A batch test failed", e.getCause());
+        }
+    }
+}
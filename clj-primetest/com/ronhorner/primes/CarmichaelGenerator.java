@@ -0,0 +1,329 @@
+package com.ronhorner.primes;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * <p>
+ * Finds every Carmichael number up to a bound with Korselt's criterion and
+ * writes them to a compact binary table that {@link Carmichael} can load.
+ * </p>
+ *
+ * <p>
+ * Korselt's criterion says that a composite <i>n</i> is a Carmichael number
+ * if and only if it is square free and <i>p</i>-1 divides <i>n</i>-1 for
+ * every prime <i>p</i> dividing <i>n</i>. Writing <i>n</i> = <i>p</i> *
+ * <i>k</i>, the second condition is the same as <i>k</i> = 1 (mod
+ * <i>p</i>-1). It also forces every prime factor of a Carmichael number to be
+ * below its square root, so sieving with the primes up to the square root of
+ * the bound finds the whole factorization.
+ * </p>
+ *
+ * <p>
+ * The odd numbers are sieved in segments. Every prime walks its odd
+ * multiples, keeping <i>k</i> mod <i>p</i>-1 and <i>k</i> mod <i>p</i> in
+ * two counters so no division is needed. A multiple that breaks the criterion
+ * is marked bad, otherwise <i>p</i> is multiplied into the product of its
+ * factors. The numbers left that are not bad and equal to the product of
+ * their factors are exactly the Carmichael numbers. Segments are sieved in
+ * parallel on a <code>ForkJoinPool</code>, with at most two tasks per thread
+ * in flight so the memory does not grow with the bound.
+ * </p>
+ *
+ * <p>
+ * The table file is the magic number {@link #MAGIC}, the bound as a long, the
+ * count as an int and then the gaps between consecutive numbers as unsigned
+ * variable length integers, seven bits to a byte.
+ * </p>
+ *
+ * @author Ron Horner
+ */
+public class CarmichaelGenerator {
+
+    /** The first four bytes of a table file, "CAR1" */
+    public static final int MAGIC = 0x43415231;
+
+    /** The number of odd numbers sieved in one segment */
+    private static final int SEGMENT = 1 << 15;
+
+    /** The number of segments handled by one task */
+    private static final int SEGMENTS_PER_TASK = 16;
+
+    /** The upper bound of the search */
+    private final long bound;
+
+    /** The number of worker threads */
+    private final int threads;
+
+    /** The odd primes up to the square root of the bound */
+    private final int[] primes;
+
+    /**
+     * Creates a generator for the Carmichael numbers up to <i>bound</i>.
+     *
+     * @param bound
+     *            the largest number to consider, below 2^62
+     * @param threads
+     *            the number of worker threads
+     */
+    public CarmichaelGenerator(long bound, int threads) {
+        if (bound < 1 || bound > SegmentedSieve.MAX_BOUND || threads < 1) {
+            throw new IllegalArgumentException("Invalid bound " + bound + " or thread count " + threads);
+        }
+        this.bound = bound;
+        this.threads = threads;
+        this.primes = SegmentedSieve.oddPrimesUpTo((int) IntegerRoots.isqrt(bound));
+    }
+
+    /**
+     * @return every Carmichael number up to the bound in increasing order
+     */
+    public long[] generate() {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        int window = 2 * threads;
+        ArrayDeque<ForkJoinTask<long[]>> pending = new ArrayDeque<ForkJoinTask<long[]>>(window);
+        long span = 2L * SEGMENT * SEGMENTS_PER_TASK;
+        long[] rval = new long[1024];
+        int count = 0;
+        try {
+            long next = 1;
+            while (next <= bound || !pending.isEmpty()) {
+                while (next <= bound && pending.size() < window) {
+                    final long start = next;
+                    final long end = Math.min(bound, next + span - 1);
+                    pending.add(pool.submit(new RecursiveTask<long[]>() {
+                        private static final long serialVersionUID = 1L;
+
+                        protected long[] compute() {
+                            return sieve(start, end);
+                        }
+                    }));
+                    next = end + 1;
+                }
+                long[] found = pending.poll().join();
+                if (count + found.length > rval.length) {
+                    rval = Arrays.copyOf(rval, Math.max(2 * rval.length, count + found.length));
+                }
+                System.arraycopy(found, 0, rval, count, found.length);
+                count += found.length;
+            }
+        } finally {
+            for (ForkJoinTask<long[]> task : pending) {
+                task.cancel(false);
+            }
+            pool.shutdown();
+        }
+        return Arrays.copyOf(rval, count);
+    }
+
+    /**
+     * Finds the Carmichael numbers in [from, to], from must be odd.
+     */
+    private long[] sieve(long from, long to) {
+        long[] product = new long[SEGMENT];
+        boolean[] bad = new boolean[SEGMENT];
+        long[] found = new long[16];
+        int count = 0;
+
+        for (long segLow = from; segLow <= to; segLow += 2L * SEGMENT) {
+            int length = (int) ((Math.min(to, segLow + 2L * (SEGMENT - 1)) - segLow) >>> 1) + 1;
+            Arrays.fill(product, 0, length, 1L);
+            Arrays.fill(bad, 0, length, false);
+            long segHigh = segLow + 2L * (length - 1);
+
+            for (int i = 0; i < primes.length; i++) {
+                long p = primes[i];
+                if (p * p > segHigh) {
+                    break;
+                }
+                // The first odd multiple p*k in the segment with k > 1, so a
+                // prime is never counted as its own factorization
+                long k = Math.max(3, (segLow + p - 1) / p);
+                if ((k & 1) == 0) {
+                    k++;
+                }
+                long n = p * k;
+                if (n > segHigh) {
+                    continue;
+                }
+                int modP1 = (int) (k % (p - 1));
+                int modP = (int) (k % p);
+                int step = (int) p; // moving k by 2 moves n by 2p, which is p slots
+                for (int j = (int) ((n - segLow) >>> 1); j < length; j += step) {
+                    if (!bad[j]) {
+                        if (modP == 0 || modP1 != 1) {
+                            bad[j] = true;
+                        } else {
+                            product[j] *= p;
+                        }
+                    }
+                    modP1 += 2;
+                    if (modP1 >= p - 1) {
+                        modP1 -= p - 1;
+                    }
+                    modP += 2;
+                    if (modP >= p) {
+                        modP -= p;
+                    }
+                }
+            }
+
+            for (int j = 0; j < length; j++) {
+                long n = segLow + 2L * j;
+                if (!bad[j] && product[j] == n && n > 1) {
+                    if (count == found.length) {
+                        found = Arrays.copyOf(found, count * 2);
+                    }
+                    found[count++] = n;
+                }
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    /**
+     * <p>
+     * Checks Korselt's criterion directly by factoring <i>n</i> with trial
+     * division.
+     * </p>
+     *
+     * @param n
+     *            the number in question
+     * @return true if n is a Carmichael number
+     */
+    public static boolean isCarmichael(long n) {
+        if (n < 561 || (n & 1) == 0) {
+            return false;
+        }
+        long m = n;
+        int factors = 0;
+        for (long p = 3; p * p <= m; p += 2) {
+            if (m % p == 0) {
+                m /= p;
+                if (m % p == 0 || (n - 1) % (p - 1) != 0) {
+                    return false;
+                }
+                factors++;
+            }
+        }
+        if (m > 1) {
+            if (m == n || (n - 1) % (m - 1) != 0) {
+                return false;
+            }
+            factors++;
+        }
+        return factors >= 3;
+    }
+
+    /**
+     * Writes a table of Carmichael numbers.
+     *
+     * @param out
+     *            where to write the table, it is not closed
+     * @param bound
+     *            the bound up to which the table is complete
+     * @param numbers
+     *            the Carmichael numbers in increasing order
+     * @throws IOException
+     *             if the stream cannot be written
+     */
+    public static void writeTable(OutputStream out, long bound, long[] numbers) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeLong(bound);
+        data.writeInt(numbers.length);
+        long previous = 0;
+        for (int i = 0; i < numbers.length; i++) {
+            long gap = numbers[i] - previous;
+            while ((gap & ~0x7FL) != 0) {
+                data.writeByte((int) ((gap & 0x7F) | 0x80));
+                gap >>>= 7;
+            }
+            data.writeByte((int) gap);
+            previous = numbers[i];
+        }
+        data.flush();
+    }
+
+    /**
+     * Reads a table written by {@link #writeTable(OutputStream, long, long[])}.
+     *
+     * @param in
+     *            the table, it is not closed
+     * @param bound
+     *            receives the bound of the table in element zero
+     * @return the Carmichael numbers in increasing order
+     * @throws IOException
+     *             if the stream cannot be read or is not a table
+     */
+    public static long[] readTable(InputStream in, long[] bound) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a Carmichael table");
+        }
+        bound[0] = data.readLong();
+        int count = data.readInt();
+        if (count < 0) {
+            throw new IOException("Corrupt Carmichael table");
+        }
+        long[] numbers = new long[count];
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            long gap = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = data.readUnsignedByte();
+                gap |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            previous += gap;
+            numbers[i] = previous;
+        }
+        return numbers;
+    }
+
+    /**
+     * Generates a table from the command line.
+     *
+     * <dd>java com.ronhorner.primes.CarmichaelGenerator <i>bound</i>
+     * <i>file</i> [<i>threads</i>]</dd>
+     *
+     * @param args
+     *            the bound, the output file and optionally the thread count
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Usage CarmichaelGenerator <bound> <file> [<threads>]");
+            return;
+        }
+        try {
+            long bound = Long.parseLong(args[0].trim());
+            int threads = args.length > 2 ? Integer.parseInt(args[2].trim())
+                    : Runtime.getRuntime().availableProcessors();
+            long start = System.currentTimeMillis();
+            long[] numbers = new CarmichaelGenerator(bound, threads).generate();
+            OutputStream out = new FileOutputStream(args[1]);
+            try {
+                writeTable(out, bound, numbers);
+            } finally {
+                out.close();
+            }
+            System.out.println(numbers.length + " Carmichael numbers up to " + bound + " written to " + args[1]
+                    + " in " + (System.currentTimeMillis() - start) + " ms");
+        } catch (Exception e) {
+            System.out.println("Could not generate the table: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,325 @@
+package com.ronhorner.primes;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Generates random safe primes and Cunningham chains of the first kind.
+ * </p>
+ *
+ * <p>
+ * A Cunningham chain of the first kind of length <i>k</i> is a run of primes
+ * p, 2p+1, 4p+3, ..., 2<sup>k-1</sup>(p+1)-1, each one twice the one before
+ * plus one. A chain of length two is a Sophie Germain prime p and the safe
+ * prime q = 2p+1, for which (q-1)/2 is also prime.
+ * </p>
+ *
+ * <p>
+ * Element j of the chain starting at c is 2<sup>j</sup>(c+1)-1, which is
+ * divisible by a small prime r exactly when c = 2<sup>-j</sup>-1 (mod r).
+ * A window of odd starts is therefore sieved for every element of the chain
+ * at once, each prime crossing off one residue class per element, and only
+ * the starts that no small prime divides anywhere in the chain are given to
+ * the {@link PrimalityTest}. The elements are tested in order so most
+ * survivors cost a single test. With an executor each worker searches from
+ * its own random start and the first chain found stops the others.
+ * </p>
+ *
+ * <p>
+ * Progress is reported to a {@link ProgressListener} after every window
+ * rather than printed.
+ * </p>
+ *
+ * @author Ron Horner
+ */
+public class CunninghamChainGenerator {
+
+    /** The default number of primes the windows are sieved with */
+    public static final int DEFAULT_SIEVE_PRIMES = 1 << 14;
+
+    /** The number of odd starts in one window */
+    public static final int WINDOW = 1 << 18;
+
+    /**
+     * Receives the progress of a search. It is called from the worker
+     * threads, possibly several at once.
+     */
+    public interface ProgressListener {
+
+        /**
+         * @param sieved
+         *            the number of starts sieved so far
+         * @param tested
+         *            the number of primality tests run so far
+         * @param longest
+         *            the longest chain found so far
+         */
+        void progress(long sieved, long tested, int longest);
+    }
+
+    /** The test run on the chain elements */
+    private final PrimalityTest test;
+
+    /** Runs the workers, or null to search on the calling thread */
+    private final ExecutorService executor;
+
+    /** The number of workers */
+    private final int parallelism;
+
+    /** The odd sieving primes */
+    private final int[] primes;
+
+    /** Receives the progress, may be null */
+    private volatile ProgressListener listener;
+
+    /** The number of starts sieved */
+    private final AtomicLong sieved = new AtomicLong();
+
+    /** The number of tests run */
+    private final AtomicLong tested = new AtomicLong();
+
+    /** The longest chain seen */
+    private final AtomicInteger longest = new AtomicInteger();
+
+    /** One random source per thread */
+    private final ThreadLocal<SecureRandom> random = ThreadLocal.withInitial(SecureRandom::new);
+
+    /**
+     * Creates a generator that runs on the calling thread.
+     *
+     * @param test
+     *            the test run on the chain elements
+     */
+    public CunninghamChainGenerator(PrimalityTest test) {
+        this(test, null, 1);
+    }
+
+    /**
+     * Creates a generator.
+     *
+     * @param test
+     *            the test run on the chain elements
+     * @param executor
+     *            runs the workers, it is not shut down by this class, or null
+     *            to search on the calling thread
+     * @param parallelism
+     *            the number of workers, the number of threads the executor
+     *            has
+     */
+    public CunninghamChainGenerator(PrimalityTest test, ExecutorService executor, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Invalid parallelism " + parallelism);
+        }
+        this.test = test;
+        this.executor = executor;
+        this.parallelism = parallelism;
+        int[] first = SmallPrimeFilter.firstPrimes(DEFAULT_SIEVE_PRIMES);
+        primes = Arrays.copyOfRange(first, 1, first.length);
+    }
+
+    /**
+     * @param l
+     *            receives the progress of the searches, or null for none
+     */
+    public void setProgressListener(ProgressListener l) {
+        listener = l;
+    }
+
+    /**
+     * Generates a random safe prime q of exactly <i>bits</i> bits, so that
+     * (q-1)/2 is also prime.
+     *
+     * @param bits
+     *            the bit length of q, at least three
+     * @return the safe prime
+     */
+    public BigInteger safePrime(int bits) {
+        if (bits < 3) {
+            throw new IllegalArgumentException("A safe prime has at least three bits, not " + bits);
+        }
+        return findChain(bits - 1, 2)[1];
+    }
+
+    /**
+     * Generates a random Cunningham chain of the first kind whose first
+     * element has exactly <i>bits</i> bits. The search does not stop until a
+     * chain is found, so long chains of few bits may not exist.
+     *
+     * @param bits
+     *            the bit length of the first element, at least two
+     * @param length
+     *            the number of primes in the chain, at least one
+     * @return the primes of the chain in increasing order
+     */
+    public BigInteger[] findChain(final int bits, final int length) {
+        if (bits < 2 || length < 1) {
+            throw new IllegalArgumentException("Invalid chain of length " + length + " with " + bits + " bits");
+        }
+        final AtomicBoolean stop = new AtomicBoolean();
+        if (executor == null) {
+            return search(bits, length, stop);
+        }
+        ExecutorCompletionService<BigInteger[]> workers = new ExecutorCompletionService<BigInteger[]>(executor);
+        ArrayList<Future<BigInteger[]>> tasks = new ArrayList<Future<BigInteger[]>>();
+        for (int i = 0; i < parallelism; i++) {
+            tasks.add(workers.submit(new Callable<BigInteger[]>() {
+                public BigInteger[] call() {
+                    return search(bits, length, stop);
+                }
+            }));
+        }
+        try {
+            return workers.take().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while searching for a chain", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("A chain search failed", e.getCause());
+        } finally {
+            stop.set(true);
+            for (Future<BigInteger[]> task : tasks) {
+                task.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * One worker, it sieves windows upwards from random starts until it finds
+     * a chain or another worker does.
+     * </p>
+     *
+     * @return the chain, or null if stopped
+     */
+    private BigInteger[] search(int bits, int length, AtomicBoolean stop) {
+        BigInteger low = BigInteger.ONE.shiftLeft(bits - 1);
+        BigInteger high = BigInteger.ONE.shiftLeft(bits);
+        SecureRandom rnd = random.get();
+        long[] composite = new long[WINDOW / 64];
+        int[] residues = new int[primes.length];
+
+        while (!stop.get()) {
+            BigInteger start = low.add(new BigInteger(bits - 1, rnd)).setBit(0);
+            for (int j = 0; j < primes.length; j++) {
+                residues[j] = start.mod(BigInteger.valueOf(primes[j])).intValue();
+            }
+            while (!stop.get() && start.compareTo(high) < 0) {
+                long limit = start.bitLength() < 32 ? start.longValue() : Long.MAX_VALUE;
+                sieve(residues, composite, length, limit);
+                sieved.addAndGet(WINDOW);
+
+                for (int i = 0; i < WINDOW && !stop.get(); i++) {
+                    if ((composite[i >>> 6] & (1L << i)) != 0) {
+                        continue;
+                    }
+                    BigInteger c = start.add(BigInteger.valueOf(2L * i));
+                    if (c.compareTo(high) >= 0) {
+                        break;
+                    }
+                    BigInteger[] chain = testChain(c, length);
+                    if (chain != null) {
+                        return chain;
+                    }
+                }
+
+                start = start.add(BigInteger.valueOf(2L * WINDOW));
+                for (int j = 0; j < primes.length; j++) {
+                    residues[j] = (int) ((residues[j] + 2L * WINDOW) % primes[j]);
+                }
+                ProgressListener l = listener;
+                if (l != null) {
+                    l.progress(sieved.get(), tested.get(), longest.get());
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Marks every start c = start + 2i in the window for which some element
+     * of the chain has a sieving prime as a factor.
+     *
+     * @param residues
+     *            start mod each sieving prime
+     * @param composite
+     *            set bit i marks start + 2i
+     * @param length
+     *            the length of the chain
+     * @param limit
+     *            only primes below this are used, so a sieving prime never
+     *            marks itself
+     */
+    private void sieve(int[] residues, long[] composite, int length, long limit) {
+        Arrays.fill(composite, 0L);
+        for (int j = 0; j < primes.length && primes[j] < limit; j++) {
+            int r = primes[j];
+            long half = (r + 1) >>> 1; // the inverse of 2 mod r
+            long inverse = 1; // 2^-level mod r
+            for (int level = 0; level < length; level++) {
+                // start + 2i = 2^-level - 1 (mod r)
+                long target = (inverse - 1 - residues[j] + r) % r;
+                long i = (target * half) % r;
+                for (; i < WINDOW; i += r) {
+                    composite[(int) (i >>> 6)] |= 1L << i;
+                }
+                inverse = (inverse * half) % r;
+            }
+        }
+    }
+
+    /**
+     * Tests the elements of the chain starting at c in order.
+     *
+     * @return the chain, or null if one of the first length elements is not
+     *         prime
+     */
+    private BigInteger[] testChain(BigInteger c, int length) {
+        BigInteger[] chain = new BigInteger[length];
+        for (int level = 0; level < length; level++) {
+            tested.incrementAndGet();
+            if (!test.isPrime(c)) {
+                return null;
+            }
+            chain[level] = c;
+            int found = level + 1;
+            int best = longest.get();
+            while (found > best && !longest.compareAndSet(best, found)) {
+                best = longest.get();
+            }
+            c = c.shiftLeft(1).add(BigInteger.ONE);
+        }
+        return chain;
+    }
+
+    /**
+     * @return the number of starts sieved so far
+     */
+    public long getSieved() {
+        return sieved.get();
+    }
+
+    /**
+     * @return the number of primality tests run so far
+     */
+    public long getTested() {
+        return tested.get();
+    }
+
+    /**
+     * @return the longest chain seen so far
+     */
+    public int getLongest() {
+        return longest.get();
+    }
+}
@@ -0,0 +1,476 @@
+package com.ronhorner.primes;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongConsumer;
+
+/**
+ * <p>
+ * Lenstra's elliptic curve method for finding a factor of a composite.
+ * </p>
+ *
+ * <p>
+ * A random curve taken modulo a prime factor p of n has a group order near p
+ * that is sometimes smooth. When it is, multiplying a point by every prime
+ * power up to a bound B1 reaches the point at infinity modulo p, which shows
+ * up as a Z coordinate sharing the factor p with n. Unlike Pollard's rho the
+ * work depends on the size of p and not of n, and a curve that fails is
+ * simply replaced by another one.
+ * </p>
+ *
+ * <p>
+ * The curves are in Montgomery form By<sup>2</sup> = x<sup>3</sup> +
+ * Ax<sup>2</sup> + x and only X and Z are kept, so a doubling costs five
+ * multiplications, an addition six and no step needs an inverse. Suyama's
+ * parametrization by &sigma; gives every curve a group order divisible by
+ * 12. All of the arithmetic is done on a {@link MontgomeryContext}.
+ * </p>
+ *
+ * <p>
+ * Stage 2 catches a curve whose order has one more prime q with B1 &lt; q
+ * &le; B2. With Q the point after stage 1, every such q is written as mD
+ * &plusmn; j with j &le; D/2, where D = {@value #D}. The baby steps jQ are
+ * computed once per curve and the giant steps mDQ by repeated addition, and
+ * qQ is infinity exactly when the x coordinates of mDQ and jQ agree. The
+ * cross products X<sub>m</sub>Z<sub>j</sub> - X<sub>j</sub>Z<sub>m</sub> of
+ * every q are multiplied together and only checked with one gcd at the end.
+ * </p>
+ *
+ * <p>
+ * With an executor each thread takes curves until the count is used up, and
+ * all of them stop at their next check once any curve finds a factor.
+ * </p>
+ *
+ * <p>
+ * <a href="http://en.wikipedia.org/wiki/Lenstra_elliptic_curve_factorization">
+ * http://en.wikipedia.org/wiki/Lenstra_elliptic_curve_factorization </a>
+ * </p>
+ *
+ * @author Ron Horner
+ */
+public class EllipticCurveMethod {
+
+    /** The giant step of stage 2, 2*3*5*7*11 */
+    public static final int D = 2310;
+
+    /** The largest stage 1 bound */
+    public static final long MAX_B1 = Integer.MAX_VALUE - 1;
+
+    /** The number of stage 1 primes between checks for a factor from another curve */
+    private static final int CHECK_PRIMES = 256;
+
+    /** The number of stage 2 numbers sieved between checks */
+    private static final long STAGE_2_WINDOW = 1 << 22;
+
+    /** The first value of sigma, smaller ones give degenerate curves */
+    private static final long FIRST_SIGMA = 6;
+
+    /** Runs the curves, or null to run them on the calling thread */
+    private final ExecutorService executor;
+
+    /** The number of threads the executor has */
+    private final int parallelism;
+
+    /**
+     * Creates a factorizer that runs on the calling thread.
+     */
+    public EllipticCurveMethod() {
+        this(null, 1);
+    }
+
+    /**
+     * Creates a factorizer.
+     *
+     * @param executor
+     *            runs the curves, it is not shut down by this class, or null
+     *            to run them on the calling thread
+     * @param parallelism
+     *            the number of threads the executor has
+     */
+    public EllipticCurveMethod(ExecutorService executor, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Invalid parallelism " + parallelism);
+        }
+        this.executor = executor;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * <p>
+     * Runs up to <i>curves</i> curves on n. The curves are numbered from
+     * &sigma; = {@value #FIRST_SIGMA} on, so the same call always tries the
+     * same curves.
+     * </p>
+     *
+     * @param n
+     *            an odd composite of at most {@link MontgomeryContext#MAX_BITS}
+     *            bits that is not a perfect power
+     * @param b1
+     *            the stage 1 bound, at least 11 and at most {@link #MAX_B1}
+     * @param b2
+     *            the stage 2 bound, no stage 2 when it is at most b1
+     * @param curves
+     *            the number of curves to try
+     * @return a proper factor of n, or null if none of the curves found one
+     */
+    public BigInteger findFactor(final BigInteger n, final long b1, final long b2, int curves) {
+        if (!n.testBit(0) || n.bitLength() < 2 || n.bitLength() > MontgomeryContext.MAX_BITS) {
+            throw new IllegalArgumentException("The elliptic curve method can not factor " + n);
+        }
+        if (b1 < 11 || b1 > MAX_B1 || b2 > SegmentedSieve.MAX_BOUND || curves < 1) {
+            throw new IllegalArgumentException("Invalid bounds B1 = " + b1 + ", B2 = " + b2 + " for "
+                    + curves + " curves");
+        }
+        final int[] primes = SegmentedSieve.oddPrimesUpTo((int) b1);
+        final AtomicInteger nextCurve = new AtomicInteger();
+        final AtomicReference<BigInteger> found = new AtomicReference<BigInteger>();
+        final int total = curves;
+        Runnable worker = new Runnable() {
+            public void run() {
+                Curve curve = new Curve(n, found);
+                for (int i = nextCurve.getAndIncrement(); i < total && found.get() == null; i = nextCurve
+                        .getAndIncrement()) {
+                    BigInteger factor = curve.run(FIRST_SIGMA + i, primes, b1, b2);
+                    if (factor != null) {
+                        found.compareAndSet(null, factor);
+                    }
+                }
+            }
+        };
+
+        if (executor == null || parallelism == 1 || curves == 1) {
+            worker.run();
+            return found.get();
+        }
+        ArrayList<Future<?>> workers = new ArrayList<Future<?>>();
+        try {
+            for (int i = 0; i < Math.min(parallelism, curves); i++) {
+                workers.add(executor.submit(worker));
+            }
+            for (Future<?> future : workers) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while running curves", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("A curve failed", e.getCause());
+        } finally {
+            for (Future<?> future : workers) {
+                future.cancel(true);
+            }
+        }
+        return found.get();
+    }
+
+    /**
+     * <p>
+     * One thread's curves. The context and every temporary are reused from
+     * curve to curve.
+     * </p>
+     */
+    private static class Curve implements LongConsumer {
+        /** The number being factored */
+        private final BigInteger n;
+
+        /** The arithmetic mod n */
+        private final MontgomeryContext context;
+
+        /** The factor found by any curve, checked to stop early */
+        private final AtomicReference<BigInteger> found;
+
+        /** (A+2)/4 of the current curve */
+        private final long[] a24;
+
+        /** The point being multiplied */
+        private final long[] x, z;
+
+        /** Ladder registers */
+        private final long[] x0, z0, x1, z1;
+
+        /** Scratch for the additions and doublings */
+        private final long[] s, d, t, u;
+
+        /** The giant steps mDQ and (m+1)DQ, and the step DQ */
+        private final long[] xGiant, zGiant, xNext, zNext, xStep, zStep;
+
+        /** The m of the current giant step */
+        private long giant;
+
+        /** The baby steps jQ for odd j coprime to D, null for the others */
+        private final long[][] xBaby, zBaby;
+
+        /** The product of the stage 2 cross products */
+        private final long[] acc;
+
+        Curve(BigInteger n, AtomicReference<BigInteger> found) {
+            this.n = n;
+            this.found = found;
+            this.context = new MontgomeryContext(n);
+            a24 = context.newElement();
+            x = context.newElement();
+            z = context.newElement();
+            x0 = context.newElement();
+            z0 = context.newElement();
+            x1 = context.newElement();
+            z1 = context.newElement();
+            s = context.newElement();
+            d = context.newElement();
+            t = context.newElement();
+            u = context.newElement();
+            xNext = context.newElement();
+            zNext = context.newElement();
+            xGiant = context.newElement();
+            zGiant = context.newElement();
+            xStep = context.newElement();
+            zStep = context.newElement();
+            acc = context.newElement();
+            xBaby = new long[D / 2 + 1][];
+            zBaby = new long[D / 2 + 1][];
+            for (int j = 1; j <= D / 2; j += 2) {
+                if (BigInteger.valueOf(j).gcd(BigInteger.valueOf(D)).equals(BigInteger.ONE)) {
+                    xBaby[j] = context.newElement();
+                    zBaby[j] = context.newElement();
+                }
+            }
+        }
+
+        /**
+         * Runs both stages on the curve given by sigma.
+         *
+         * @return a proper factor of n, or null
+         */
+        BigInteger run(long sigma, int[] primes, long b1, long b2) {
+            BigInteger factor = start(sigma);
+            if (factor != null) {
+                return factor.equals(n) ? null : factor;
+            }
+            for (long q = 2; q <= b1; q *= 2) {
+                doubling(x, z, x, z);
+            }
+            for (int i = 0; i < primes.length; i++) {
+                int p = primes[i];
+                long q = p;
+                while (q <= b1 / p) {
+                    q *= p;
+                }
+                multiply(q);
+                if (i % CHECK_PRIMES == 0 && found.get() != null) {
+                    return null;
+                }
+            }
+            BigInteger g = context.toBigInteger(z).gcd(n);
+            if (g.equals(n)) {
+                return null;
+            }
+            if (!g.equals(BigInteger.ONE)) {
+                return g;
+            }
+            if (b2 <= b1) {
+                return null;
+            }
+            return stageTwo(b1, b2);
+        }
+
+        /**
+         * <p>
+         * Sets up Suyama's curve for sigma with u = &sigma;<sup>2</sup> - 5
+         * and v = 4&sigma;: the starting point is (u<sup>3</sup> :
+         * v<sup>3</sup>) and (A+2)/4 = (v-u)<sup>3</sup>(3u+v) /
+         * (16u<sup>3</sup>v).
+         * </p>
+         *
+         * @return a factor of n shared with the denominator, or null when the
+         *         curve is set up
+         */
+        private BigInteger start(long sigma) {
+            BigInteger sig = BigInteger.valueOf(sigma);
+            BigInteger u = sig.multiply(sig).subtract(BigInteger.valueOf(5)).mod(n);
+            BigInteger v = sig.shiftLeft(2).mod(n);
+            BigInteger u3 = u.pow(3).mod(n);
+            BigInteger v3 = v.pow(3).mod(n);
+            BigInteger denominator = u3.multiply(v).shiftLeft(4).mod(n);
+            BigInteger g = denominator.gcd(n);
+            if (!g.equals(BigInteger.ONE)) {
+                return g;
+            }
+            BigInteger numerator = v.subtract(u).pow(3).multiply(u.multiply(BigInteger.valueOf(3)).add(v));
+            context.toMontgomery(numerator.multiply(denominator.modInverse(n)), a24);
+            context.toMontgomery(u3, x);
+            context.toMontgomery(v3, z);
+            return null;
+        }
+
+        /**
+         * (x, z) := k * (x, z) with the Montgomery ladder.
+         */
+        private void multiply(long k) {
+            ladder(k, x, z, x0, z0, x1, z1);
+            System.arraycopy(x0, 0, x, 0, x.length);
+            System.arraycopy(z0, 0, z, 0, z.length);
+        }
+
+        /**
+         * <p>
+         * The Montgomery ladder, which keeps (x1 : z1) - (x0 : z0) equal to the
+         * point throughout so every addition knows its difference.
+         * </p>
+         *
+         * @return k * P in (x0, z0) and (k+1) * P in (x1, z1), for k &ge; 1
+         */
+        private void ladder(long k, long[] xp, long[] zp, long[] x0, long[] z0, long[] x1, long[] z1) {
+            System.arraycopy(xp, 0, x0, 0, xp.length);
+            System.arraycopy(zp, 0, z0, 0, zp.length);
+            doubling(xp, zp, x1, z1);
+            for (int bit = 62 - Long.numberOfLeadingZeros(k); bit >= 0; bit--) {
+                if (((k >>> bit) & 1) != 0) {
+                    addition(x1, z1, x0, z0, xp, zp, x0, z0);
+                    doubling(x1, z1, x1, z1);
+                } else {
+                    addition(x0, z0, x1, z1, xp, zp, x1, z1);
+                    doubling(x0, z0, x0, z0);
+                }
+            }
+        }
+
+        /**
+         * <p>
+         * (xr : zr) = 2(xp : zp) with X = (x+z)<sup>2</sup>(x-z)<sup>2</sup>
+         * and Z = 4xz((x-z)<sup>2</sup> + (A+2)/4 * 4xz). The output may be
+         * the input.
+         * </p>
+         */
+        private void doubling(long[] xp, long[] zp, long[] xr, long[] zr) {
+            MontgomeryContext c = context;
+            c.add(xp, zp, s);
+            c.square(s, s);
+            c.subtract(xp, zp, d);
+            c.square(d, d);
+            c.subtract(s, d, t);
+            c.multiply(s, d, xr);
+            c.multiply(a24, t, u);
+            c.add(u, d, u);
+            c.multiply(t, u, zr);
+        }
+
+        /**
+         * <p>
+         * (xr : zr) = P + Q given P - Q, with X = z<sub>d</sub>(U + V)<sup>2</sup>
+         * and Z = x<sub>d</sub>(U - V)<sup>2</sup> where U = (x<sub>p</sub> -
+         * z<sub>p</sub>)(x<sub>q</sub> + z<sub>q</sub>) and V = (x<sub>p</sub> +
+         * z<sub>p</sub>)(x<sub>q</sub> - z<sub>q</sub>). The output may be any
+         * of the inputs.
+         * </p>
+         */
+        private void addition(long[] xp, long[] zp, long[] xq, long[] zq, long[] xd, long[] zd, long[] xr,
+                long[] zr) {
+            MontgomeryContext c = context;
+            c.subtract(xp, zp, s);
+            c.add(xq, zq, d);
+            c.multiply(s, d, s);
+            c.add(xp, zp, t);
+            c.subtract(xq, zq, d);
+            c.multiply(t, d, t);
+            c.add(s, t, d);
+            c.square(d, d);
+            c.subtract(s, t, u);
+            c.square(u, u);
+            c.multiply(zd, d, d);
+            c.multiply(xd, u, zr);
+            System.arraycopy(d, 0, xr, 0, d.length);
+        }
+
+        /**
+         * <p>
+         * The baby step giant step stage 2 on the stage 1 point Q in (x, z),
+         * over the primes in (b1, b2].
+         * </p>
+         *
+         * @return a proper factor of n, or null
+         */
+        private BigInteger stageTwo(long b1, long b2) {
+            // Baby steps: jQ = (j-2)Q + 2Q with difference (j-4)Q, 2Q is kept in (x0, z0)
+            doubling(x, z, x0, z0);
+            long[] xa = x1, za = z1;
+            long[] xb = xNext, zb = zNext;
+            System.arraycopy(x, 0, xa, 0, x.length);
+            System.arraycopy(z, 0, za, 0, z.length);
+            addition(x0, z0, x, z, x, z, xb, zb);
+            saveBaby(1, xa, za);
+            for (int j = 3; j <= D / 2; j += 2) {
+                if (j > 3) {
+                    addition(xb, zb, x0, z0, xa, za, xa, za);
+                    long[] swap = xa;
+                    xa = xb;
+                    xb = swap;
+                    swap = za;
+                    za = zb;
+                    zb = swap;
+                }
+                saveBaby(j, xb, zb);
+            }
+
+            // Giant steps from the m of the first prime above b1
+            context.toMontgomery(BigInteger.ONE, acc);
+            giant = Math.max(1, (b1 + 1 + D / 2) / D);
+            ladder(D, x, z, xStep, zStep, x1, z1);
+            ladder(giant, xStep, zStep, xGiant, zGiant, xNext, zNext);
+            for (long lo = b1 + 1; lo <= b2; lo += STAGE_2_WINDOW) {
+                if (found.get() != null) {
+                    return null;
+                }
+                new SegmentedSieve(lo, Math.min(b2, lo + STAGE_2_WINDOW - 1)).forEachPrime(this);
+            }
+            BigInteger g = context.toBigInteger(acc).gcd(n);
+            return g.equals(BigInteger.ONE) || g.equals(n) ? null : g;
+        }
+
+        /**
+         * Copies jQ into the baby step table if j is coprime to D.
+         */
+        private void saveBaby(int j, long[] xj, long[] zj) {
+            if (xBaby[j] != null) {
+                System.arraycopy(xj, 0, xBaby[j], 0, xj.length);
+                System.arraycopy(zj, 0, zBaby[j], 0, zj.length);
+            }
+        }
+
+        /**
+         * <p>
+         * Multiplies the cross product of the stage 2 prime p = mD &plusmn; j
+         * into the accumulator, moving the giant steps up to m first.
+         * </p>
+         */
+        public void accept(long p) {
+            long m = (p + D / 2) / D;
+            int j = (int) Math.abs(p - m * D);
+            if (m == 0) {
+                // pQ is infinity when jQ = pQ is
+                context.multiply(acc, zBaby[j], acc);
+                return;
+            }
+            while (giant < m) {
+                // (m+2)DQ = (m+1)DQ + DQ with difference mDQ
+                addition(xNext, zNext, xStep, zStep, xGiant, zGiant, xGiant, zGiant);
+                for (int i = 0; i < xGiant.length; i++) {
+                    long swap = xGiant[i];
+                    xGiant[i] = xNext[i];
+                    xNext[i] = swap;
+                    swap = zGiant[i];
+                    zGiant[i] = zNext[i];
+                    zNext[i] = swap;
+                }
+                giant++;
+            }
+            context.multiply(xGiant, zBaby[j], s);
+            context.multiply(xBaby[j], zGiant, t);
+            context.subtract(s, t, s);
+            context.multiply(acc, s, acc);
+        }
+    }
+}
@@ -0,0 +1,429 @@
+package com.ronhorner.primes;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * <p>
+ * Splits a number into its prime factors.
+ * </p>
+ *
+ * <p>
+ * The factors among the first few hundred primes are divided out first. What
+ * is left is split recursively: a part that passes the {@link PrimalityTest}
+ * is a factor, a perfect power b<sup>k</sup> is replaced by k copies of the
+ * factors of b, and any other part is split in two with Brent's variant of
+ * Pollard's rho method or, when rho runs too long, a pipeline of
+ * {@link PollardPMinusOne}, {@link WilliamsPPlusOne} and the
+ * {@link EllipticCurveMethod}.
+ * </p>
+ *
+ * <p>
+ * Rho iterates x &rarr; x<sup>2</sup> + c mod n, which falls into a cycle
+ * modulo each prime factor p after about &radic;p steps. Brent's form finds
+ * the cycle with powers of two instead of a second sequence, and the
+ * differences are multiplied together so that one gcd with n covers
+ * {@link #GCD_BATCH} steps. When a batch overshoots and the gcd is n itself
+ * the last batch is stepped through again one gcd at a time. Numbers below
+ * 2<sup>63</sup> run on primitive longs with the Montgomery arithmetic of
+ * {@link LongPrimality}, larger ones on a {@link MontgomeryContext}, so no
+ * step allocates.
+ * </p>
+ *
+ * <p>
+ * The time to split off a factor p grows like &radic;p, so rho is quick for
+ * factors of up to about 10 digits and hopeless for two large ones. Above
+ * 2<sup>63</sup> rho therefore only gets {@link #RHO_STEPS} steps. The p-1
+ * and p+1 passes come next: they cost about as much as a single elliptic
+ * curve and find a factor of any size whose p-1 or p+1 is smooth up to the
+ * bounds B1 and B2. Last the elliptic curves are run in levels, each aimed at
+ * factors about five digits larger than the one before.
+ * </p>
+ *
+ * <p>
+ * <a href="http://en.wikipedia.org/wiki/Pollard%27s_rho_algorithm">
+ * http://en.wikipedia.org/wiki/Pollard%27s_rho_algorithm </a>
+ * </p>
+ *
+ * @author Ron Horner
+ */
+public class Factorizer {
+
+    /** The number of small primes divided out before rho */
+    public static final int TRIAL_PRIMES = 500;
+
+    /** The number of rho steps whose differences share one gcd */
+    public static final int GCD_BATCH = 128;
+
+    /** The default stage 1 bound of the p-1 and p+1 passes */
+    public static final long DEFAULT_B1 = 100000;
+
+    /** The default stage 2 bound of the p-1 and p+1 passes */
+    public static final long DEFAULT_B2 = 100 * DEFAULT_B1;
+
+    /** The number of rho steps above 2^63 before the other methods take over */
+    public static final long RHO_STEPS = 1 << 16;
+
+    /**
+     * The stage 1 bound and the number of curves for factors of 15, 20, 25,
+     * ... 50 digits. Stage 2 goes up to 100 times the stage 1 bound.
+     */
+    private static final long[][] ECM_LEVELS = { { 2000, 25 }, { 11000, 90 }, { 50000, 220 }, { 250000, 450 },
+            { 1000000, 900 }, { 3000000, 2400 }, { 11000000, 4500 }, { 43000000, 7600 } };
+
+    /** The test that decides when a part is prime */
+    private final PrimalityTest test;
+
+    /** The primes divided out first */
+    private final int[] smallPrimes;
+
+    /** Runs the elliptic curves */
+    private final EllipticCurveMethod curves;
+
+    /** The stage 1 bound of the p-1 and p+1 passes */
+    private final long b1;
+
+    /** The stage 2 bound of the p-1 and p+1 passes */
+    private final long b2;
+
+    /**
+     * Creates a factorizer that proves the parts prime with the Baillie-PSW
+     * test.
+     */
+    public Factorizer() {
+        this(PrimeUtils.getTest(PrimeUtils.BAILLIE_PSW, 0));
+    }
+
+    /**
+     * Creates a factorizer.
+     *
+     * @param test
+     *            decides when a part of 64 bits or more is prime, smaller
+     *            parts are always decided exactly
+     */
+    public Factorizer(PrimalityTest test) {
+        this(test, null, 1);
+    }
+
+    /**
+     * Creates a factorizer that runs the elliptic curves on several threads.
+     *
+     * @param test
+     *            decides when a part of 64 bits or more is prime, smaller
+     *            parts are always decided exactly
+     * @param executor
+     *            runs the curves, it is not shut down by this class, or null
+     *            to run them on the calling thread
+     * @param parallelism
+     *            the number of threads the executor has
+     */
+    public Factorizer(PrimalityTest test, ExecutorService executor, int parallelism) {
+        this(test, executor, parallelism, DEFAULT_B1, DEFAULT_B2);
+    }
+
+    /**
+     * Creates a factorizer with its own bounds for the p-1 and p+1 passes.
+     *
+     * @param test
+     *            decides when a part of 64 bits or more is prime, smaller
+     *            parts are always decided exactly
+     * @param executor
+     *            runs the curves, it is not shut down by this class, or null
+     *            to run them on the calling thread
+     * @param parallelism
+     *            the number of threads the executor has
+     * @param b1
+     *            the stage 1 bound of the p-1 and p+1 passes, at least 11
+     * @param b2
+     *            the stage 2 bound, no stage 2 when it is at most b1
+     */
+    public Factorizer(PrimalityTest test, ExecutorService executor, int parallelism, long b1, long b2) {
+        if (b1 < 11 || b1 > EllipticCurveMethod.MAX_B1 || b2 > SegmentedSieve.MAX_BOUND) {
+            throw new IllegalArgumentException("Invalid bounds B1 = " + b1 + ", B2 = " + b2);
+        }
+        this.test = test;
+        this.smallPrimes = SmallPrimeFilter.firstPrimes(TRIAL_PRIMES);
+        this.curves = new EllipticCurveMethod(executor, parallelism);
+        this.b1 = b1;
+        this.b2 = b2;
+    }
+
+    /**
+     * Finds the prime factors of <i>n</i>.
+     *
+     * @param n
+     *            a positive number of at most {@link MontgomeryContext#MAX_BITS}
+     *            bits once its small factors are removed
+     * @return the prime factors of n in increasing order, each as often as it
+     *         divides n, and none for one
+     */
+    public BigInteger[] factor(BigInteger n) {
+        if (n.signum() <= 0) {
+            throw new IllegalArgumentException("Only positive numbers can be factored, not " + n);
+        }
+        ArrayList<BigInteger> factors = new ArrayList<BigInteger>();
+        n = divideSmallPrimes(n, factors);
+        split(n, factors);
+        Collections.sort(factors);
+        return factors.toArray(new BigInteger[factors.size()]);
+    }
+
+    /**
+     * Finds a proper factor of a composite <i>n</i>, not necessarily a prime
+     * one.
+     *
+     * @param n
+     *            a composite number that is not a perfect power
+     * @return a factor d with 1 &lt; d &lt; n
+     */
+    public BigInteger findFactor(BigInteger n) {
+        if (!n.testBit(0)) {
+            return BigInteger.valueOf(2);
+        }
+        if (n.bitLength() < 64) {
+            return BigInteger.valueOf(rho(n.longValue()));
+        }
+        if (n.bitLength() > MontgomeryContext.MAX_BITS) {
+            throw new IllegalArgumentException("A factor of more than " + MontgomeryContext.MAX_BITS
+                    + " bits can not be split: " + n);
+        }
+        BigInteger d = rho(n, RHO_STEPS);
+        if (d == null) {
+            d = new PollardPMinusOne().findFactor(n, b1, b2);
+        }
+        if (d == null) {
+            d = new WilliamsPPlusOne().findFactor(n, b1, b2);
+        }
+        for (int i = 0; d == null && i < ECM_LEVELS.length; i++) {
+            long level = ECM_LEVELS[i][0];
+            d = curves.findFactor(n, level, 100 * level, (int) ECM_LEVELS[i][1]);
+        }
+        if (d == null) {
+            throw new IllegalStateException("No factor of " + n + " found");
+        }
+        return d;
+    }
+
+    /**
+     * Divides out the small primes and adds them to factors.
+     *
+     * @return what is left of n
+     */
+    private BigInteger divideSmallPrimes(BigInteger n, List<BigInteger> factors) {
+        for (int i = 0; i < smallPrimes.length && n.compareTo(BigInteger.ONE) > 0; i++) {
+            int p = smallPrimes[i];
+            if (n.bitLength() < 64) {
+                long m = n.longValue();
+                while (m % p == 0) {
+                    factors.add(BigInteger.valueOf(p));
+                    m /= p;
+                }
+                n = BigInteger.valueOf(m);
+            } else {
+                BigInteger bigP = BigInteger.valueOf(p);
+                BigInteger[] qr = n.divideAndRemainder(bigP);
+                while (qr[1].signum() == 0) {
+                    factors.add(bigP);
+                    n = qr[0];
+                    qr = n.divideAndRemainder(bigP);
+                }
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Adds the prime factors of n to factors.
+     */
+    private void split(BigInteger n, List<BigInteger> factors) {
+        if (n.equals(BigInteger.ONE)) {
+            return;
+        }
+        if (isPrime(n)) {
+            factors.add(n);
+            return;
+        }
+        int k = IntegerRoots.perfectPowerExponent(n);
+        if (k != 0) {
+            ArrayList<BigInteger> root = new ArrayList<BigInteger>();
+            split(IntegerRoots.iroot(n, k), root);
+            for (int i = 0; i < k; i++) {
+                factors.addAll(root);
+            }
+            return;
+        }
+        BigInteger d = findFactor(n);
+        split(d, factors);
+        split(n.divide(d), factors);
+    }
+
+    /**
+     * @return true if n is prime, exactly below 2^63 and by the test above that
+     */
+    private boolean isPrime(BigInteger n) {
+        if (n.bitLength() < 64) {
+            return LongPrimality.isPrime(n.longValue());
+        }
+        return test.isPrime(n);
+    }
+
+    /**
+     * <p>
+     * Brent's rho on a primitive long.
+     * </p>
+     *
+     * @param n
+     *            an odd composite below 2^63 that is not a perfect power
+     * @return a proper factor of n
+     */
+    static long rho(long n) {
+        long nInv = LongPrimality.inverse(n);
+        long one = LongPrimality.montOne(n);
+        long r2 = LongPrimality.montR2(n, one);
+        for (long c = 1;; c++) {
+            long cM = LongPrimality.toMont(c % n, r2, n, nInv);
+            long y = LongPrimality.toMont(2, r2, n, nInv);
+            long x = y;
+            long ys = y;
+            long q = one;
+            long g = 1;
+            for (long r = 1; g == 1; r <<= 1) {
+                x = y;
+                for (long i = 0; i < r; i++) {
+                    y = step(y, cM, n, nInv);
+                }
+                for (long k = 0; k < r && g == 1; k += GCD_BATCH) {
+                    ys = y;
+                    long batch = Math.min(GCD_BATCH, r - k);
+                    for (long i = 0; i < batch; i++) {
+                        y = step(y, cM, n, nInv);
+                        q = LongPrimality.montMul(q, difference(x, y, n), n, nInv);
+                    }
+                    g = gcd(q, n);
+                }
+            }
+            if (g == n) {
+                // The batch went past the cycle, step through it again one gcd at a time
+                do {
+                    ys = step(ys, cM, n, nInv);
+                    g = gcd(difference(x, ys, n), n);
+                } while (g == 1);
+            }
+            if (g != n) {
+                return g;
+            }
+        }
+    }
+
+    /**
+     * @return y^2 + c mod n in Montgomery form
+     */
+    private static long step(long y, long c, long n, long nInv) {
+        long s = LongPrimality.montMul(y, y, n, nInv) + c;
+        // The true sum is below 2n < 2^64, so subtracting n also undoes an overflow
+        return s < 0 || s >= n ? s - n : s;
+    }
+
+    /**
+     * @return x - y mod n
+     */
+    private static long difference(long x, long y, long n) {
+        long d = x - y;
+        return d < 0 ? d + n : d;
+    }
+
+    /**
+     * @return the greatest common divisor of a and b, both non negative
+     */
+    static long gcd(long a, long b) {
+        if (a == 0) {
+            return b;
+        }
+        if (b == 0) {
+            return a;
+        }
+        int shift = Long.numberOfTrailingZeros(a | b);
+        a >>>= Long.numberOfTrailingZeros(a);
+        while (b != 0) {
+            b >>>= Long.numberOfTrailingZeros(b);
+            if (a > b) {
+                long t = a;
+                a = b;
+                b = t;
+            }
+            b -= a;
+        }
+        return a << shift;
+    }
+
+    /**
+     * <p>
+     * Brent's rho on a {@link MontgomeryContext}, the same steps as
+     * {@link #rho(long)} but giving up after a number of steps.
+     * </p>
+     *
+     * @param n
+     *            an odd composite that is not a perfect power
+     * @param maxSteps
+     *            the number of steps to try
+     * @return a proper factor of n, or null if none was found in time
+     */
+    private static BigInteger rho(BigInteger n, long maxSteps) {
+        MontgomeryContext context = new MontgomeryContext(n);
+        long[] c = context.newElement();
+        long[] x = context.newElement();
+        long[] y = context.newElement();
+        long[] ys = context.newElement();
+        long[] q = context.newElement();
+        long[] diff = context.newElement();
+        long steps = 0;
+        for (long k = 1;; k++) {
+            context.toMontgomery(BigInteger.valueOf(k), c);
+            context.toMontgomery(BigInteger.valueOf(2), y);
+            context.toMontgomery(BigInteger.ONE, q);
+            BigInteger g = BigInteger.ONE;
+            for (long r = 1; g.equals(BigInteger.ONE); r <<= 1) {
+                if (steps > maxSteps) {
+                    return null;
+                }
+                steps += 2 * r;
+                System.arraycopy(y, 0, x, 0, x.length);
+                for (long i = 0; i < r; i++) {
+                    step(context, y, c);
+                }
+                for (long j = 0; j < r && g.equals(BigInteger.ONE); j += GCD_BATCH) {
+                    System.arraycopy(y, 0, ys, 0, ys.length);
+                    long batch = Math.min(GCD_BATCH, r - j);
+                    for (long i = 0; i < batch; i++) {
+                        step(context, y, c);
+                        context.subtract(x, y, diff);
+                        context.multiply(q, diff, q);
+                    }
+                    g = context.toBigInteger(q).gcd(n);
+                }
+            }
+            if (g.equals(n)) {
+                // The batch went past the cycle, step through it again one gcd at a time
+                do {
+                    step(context, ys, c);
+                    context.subtract(x, ys, diff);
+                    g = context.toBigInteger(diff).gcd(n);
+                } while (g.equals(BigInteger.ONE));
+            }
+            if (!g.equals(n)) {
+                return g;
+            }
+        }
+    }
+
+    /**
+     * y := y^2 + c in Montgomery form
+     */
+    private static void step(MontgomeryContext context, long[] y, long[] c) {
+        context.multiply(y, y, y);
+        context.add(y, c, y);
+    }
+}
@@ -0,0 +1,202 @@
+package com.ronhorner.primes;
+
+import java.math.BigInteger;
+
+/**
+ * <p>
+ * Exact integer square roots and k-th roots.
+ * </p>
+ *
+ * <p>
+ * Every root is the floor of the real root. The Newton iterations start from
+ * a power of two found from the bit length of the number, which is always
+ * above the root, so the iterates decrease monotonically and the loop stops
+ * the first time they fail to. There is no shared state, so all of these
+ * functions may be called from any number of threads at once.
+ * </p>
+ *
+ * <p>
+ * <a href="http://en.wikipedia.org/wiki/Integer_square_root">
+ * http://en.wikipedia.org/wiki/Integer_square_root </a>
+ * </p>
+ *
+ * @author Ron Horner
+ */
+public final class IntegerRoots {
+
+    /** Quadratic residues modulo 64, bit i is set when i is a square mod 64 */
+    private static final long SQUARES_MOD_64;
+
+    static {
+        long bits = 0;
+        for (int i = 0; i < 64; i++) {
+            bits |= 1L << ((i * i) & 63);
+        }
+        SQUARES_MOD_64 = bits;
+    }
+
+    /** Static utility class, no instances */
+    private IntegerRoots() {
+    }
+
+    /**
+     * @param n
+     *            a non negative long
+     * @return the floor of the square root of n
+     */
+    public static long isqrt(long n) {
+        if (n < 0) {
+            throw new ArithmeticException("Square root of negative number " + n);
+        }
+        // The double is within one of the answer for every long
+        long r = (long) Math.sqrt((double) n);
+        while (r * r > n || r > 3037000499L) {
+            r--;
+        }
+        while (r < 3037000499L && (r + 1) * (r + 1) <= n) {
+            r++;
+        }
+        return r;
+    }
+
+    /**
+     * @param n
+     *            a non negative BigInteger
+     * @return the floor of the square root of n
+     */
+    public static BigInteger isqrt(BigInteger n) {
+        if (n.signum() < 0) {
+            throw new ArithmeticException("Square root of negative number " + n);
+        }
+        if (n.bitLength() < 63) {
+            return BigInteger.valueOf(isqrt(n.longValue()));
+        }
+        BigInteger x = BigInteger.ONE.shiftLeft((n.bitLength() + 1) / 2);
+        while (true) {
+            BigInteger y = x.add(n.divide(x)).shiftRight(1);
+            if (y.compareTo(x) >= 0) {
+                return x;
+            }
+            x = y;
+        }
+    }
+
+    /**
+     * @param n
+     *            a non negative BigInteger
+     * @param k
+     *            the degree of the root, at least one
+     * @return the floor of the k-th root of n
+     */
+    public static BigInteger iroot(BigInteger n, int k) {
+        if (k < 1 || n.signum() < 0) {
+            throw new ArithmeticException("Invalid root " + k + " of " + n);
+        }
+        if (k == 1 || n.signum() == 0) {
+            return n;
+        }
+        if (k == 2) {
+            return isqrt(n);
+        }
+        if (k >= n.bitLength()) {
+            return BigInteger.ONE;
+        }
+        BigInteger kBig = BigInteger.valueOf(k);
+        BigInteger kMinusOne = BigInteger.valueOf(k - 1);
+        BigInteger x = BigInteger.ONE.shiftLeft((n.bitLength() + k - 1) / k);
+        while (true) {
+            BigInteger y = kMinusOne.multiply(x).add(n.divide(x.pow(k - 1))).divide(kBig);
+            if (y.compareTo(x) >= 0) {
+                return x;
+            }
+            x = y;
+        }
+    }
+
+    /**
+     * @param n
+     *            a non negative long
+     * @param k
+     *            the degree of the root, at least one
+     * @return the floor of the k-th root of n
+     */
+    public static long iroot(long n, int k) {
+        if (k == 2) {
+            return isqrt(n);
+        }
+        return iroot(BigInteger.valueOf(n), k).longValue();
+    }
+
+    /**
+     * @param n
+     *            any long
+     * @return true if n is the square of an integer
+     */
+    public static boolean isPerfectSquare(long n) {
+        if (n < 0 || ((SQUARES_MOD_64 >>> (n & 63)) & 1) == 0) {
+            return false;
+        }
+        long r = isqrt(n);
+        return r * r == n;
+    }
+
+    /**
+     * @param n
+     *            any BigInteger
+     * @return true if n is the square of an integer
+     */
+    public static boolean isPerfectSquare(BigInteger n) {
+        if (n.signum() < 0) {
+            return false;
+        }
+        if (n.bitLength() < 63) {
+            return isPerfectSquare(n.longValue());
+        }
+        if (((SQUARES_MOD_64 >>> (n.intValue() & 63)) & 1) == 0) {
+            return false;
+        }
+        BigInteger r = isqrt(n);
+        return r.multiply(r).equals(n);
+    }
+
+    /**
+     * <p>
+     * Checks if <i>n</i> = <i>b</i><sup><i>k</i></sup> for some integers
+     * <i>b</i> and <i>k</i> &gt; 1. Only prime exponents need to be tried,
+     * and none larger than the bit length of <i>n</i>.
+     * </p>
+     *
+     * @param n
+     *            any BigInteger
+     * @return true if n is a perfect power
+     */
+    public static boolean isPerfectPower(BigInteger n) {
+        return perfectPowerExponent(n) != 0;
+    }
+
+    /**
+     * @param n
+     *            any BigInteger
+     * @return the smallest prime k with n = b^k, or 0 when n is not a perfect
+     *         power
+     */
+    public static int perfectPowerExponent(BigInteger n) {
+        if (n.compareTo(BigInteger.ONE) <= 0) {
+            return 0;
+        }
+        if (isPerfectSquare(n)) {
+            return 2;
+        }
+        int bits = n.bitLength();
+        for (int k = 3; k < bits; k += 2) {
+            if (!LongPrimality.isPrime(k)) {
+                continue;
+            }
+            BigInteger root = iroot(n, k);
+            if (root.pow(k).equals(n)) {
+                return k;
+            }
+        }
+        return 0;
+    }
+}
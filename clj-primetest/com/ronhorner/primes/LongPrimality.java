@@ -0,0 +1,214 @@
+package com.ronhorner.primes;
+
+/**
+ * <p>
+ * A primitive <code>long</code> version of the Miller-Rabin test for numbers
+ * smaller than 2<sup>63</sup>.
+ * </p>
+ *
+ * <p>
+ * All of the arithmetic is done with Montgomery multiplication on primitive
+ * longs (using <code>Math.multiplyHigh</code> for the upper half of the
+ * product), so a test never allocates an object. The witnesses are the fixed
+ * set of seven bases found by Jim Sinclair which is known to be deterministic
+ * for every <i>n</i> &lt; 2<sup>64</sup>, so the answer is exact and not
+ * probabilistic.
+ * </p>
+ *
+ * <p>
+ * <a href="http://miller-rabin.appspot.com/">http://miller-rabin.appspot.com/</a>
+ * </p>
+ *
+ * @author Ron Horner
+ */
+public final class LongPrimality {
+
+    /** Bases which make the strong probable prime test exact for n &lt; 2^64 */
+    private static final long[] BASES = { 2, 325, 9375, 28178, 450775, 9780504, 1795265022 };
+
+    /** The small primes used to weed out easy composites before the Montgomery setup */
+    private static final int[] SMALL_PRIMES = { 2, 3, 5, 7, 11, 13, 17, 19, 23, 29, 31, 37 };
+
+    /** Static utility class, no instances */
+    private LongPrimality() {
+    }
+
+    /**
+     * <p>
+     * Deterministic Miller-Rabin test for a primitive long.
+     * </p>
+     *
+     * @param n
+     *            the number in question
+     * @return true if and only if n is prime
+     */
+    public static boolean isPrime(long n) {
+        if (n < 2) {
+            return false;
+        }
+        for (int i = 0; i < SMALL_PRIMES.length; i++) {
+            int p = SMALL_PRIMES[i];
+            if (n % p == 0) {
+                return n == p;
+            }
+        }
+        if (n < 41 * 41) {
+            return true;
+        }
+
+        long nInv = inverse(n);
+        long one = montOne(n);
+        long minusOne = n - one;
+        long r2 = montR2(n, one);
+
+        // Write n-1 = 2^s * d such that d is odd
+        long d = n - 1;
+        int s = Long.numberOfTrailingZeros(d);
+        d >>>= s;
+
+        for (int i = 0; i < BASES.length; i++) {
+            long a = BASES[i] % n;
+            if (a == 0) {
+                continue;
+            }
+            if (!strongProbablePrime(toMont(a, r2, n, nInv), d, s, n, nInv, one, minusOne)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * <p>
+     * One round of the strong probable prime test with a witness that is
+     * already in Montgomery form.
+     * </p>
+     *
+     * @return false if a proves n composite
+     */
+    static boolean strongProbablePrime(long a, long d, int s, long n, long nInv, long one, long minusOne) {
+        long y = montPow(a, d, n, nInv, one);
+        if (y == one || y == minusOne) {
+            return true;
+        }
+        for (int j = 1; j < s; j++) {
+            y = montMul(y, y, n, nInv);
+            if (y == minusOne) {
+                return true;
+            }
+            if (y == one) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * <p>
+     * Computes n<sup>-1</sup> mod 2<sup>64</sup> for an odd n with Newton
+     * iteration. Each step doubles the number of correct low bits.
+     * </p>
+     *
+     * @param n
+     *            an odd modulus
+     * @return the inverse of n modulo 2^64
+     */
+    static long inverse(long n) {
+        long x = n; // correct to 3 bits since n*n = 1 (mod 8)
+        for (int i = 0; i < 5; i++) {
+            x *= 2 - n * x;
+        }
+        return x;
+    }
+
+    /**
+     * @return R mod n, the Montgomery representation of one
+     */
+    static long montOne(long n) {
+        long r = Long.remainderUnsigned(-1L, n) + 1;
+        return r == n ? 0 : r;
+    }
+
+    /**
+     * <p>
+     * Computes R<sup>2</sup> mod n by doubling R mod n sixty four times. This
+     * avoids a 128 bit division and only runs once per modulus.
+     * </p>
+     *
+     * @return R^2 mod n
+     */
+    static long montR2(long n, long one) {
+        long x = one;
+        for (int i = 0; i < 64; i++) {
+            x <<= 1; // x < 2^63 so the doubled value fits in 64 unsigned bits
+            if (x < 0 || x >= n) {
+                x -= n;
+            }
+        }
+        return x;
+    }
+
+    /**
+     * @return a in Montgomery form, a * R mod n
+     */
+    static long toMont(long a, long r2, long n, long nInv) {
+        return montMul(a, r2, n, nInv);
+    }
+
+    /**
+     * @return a converted back out of Montgomery form, a * R^-1 mod n
+     */
+    static long fromMont(long a, long n, long nInv) {
+        long m = a * nInv;
+        long t = -unsignedMultiplyHigh(m, n);
+        return t < 0 ? t + n : t;
+    }
+
+    /**
+     * <p>
+     * Montgomery multiplication, returns a * b * R<sup>-1</sup> mod n for
+     * 0 &lt;= a, b &lt; n &lt; 2<sup>63</sup>.
+     * </p>
+     *
+     * @param a
+     *            first factor in Montgomery form
+     * @param b
+     *            second factor in Montgomery form
+     * @param n
+     *            the odd modulus
+     * @param nInv
+     *            n^-1 mod 2^64 from {@link #inverse(long)}
+     * @return the Montgomery product
+     */
+    static long montMul(long a, long b, long n, long nInv) {
+        // a and b are non negative so the signed high product is the unsigned one
+        long hi = Math.multiplyHigh(a, b);
+        long lo = a * b;
+        long m = lo * nInv;
+        long t = hi - unsignedMultiplyHigh(m, n);
+        return t < 0 ? t + n : t;
+    }
+
+    /**
+     * @return a^e * R^(1-e) mod n, Montgomery exponentiation by squaring
+     */
+    static long montPow(long a, long e, long n, long nInv, long one) {
+        long result = one;
+        while (e != 0) {
+            if ((e & 1) != 0) {
+                result = montMul(result, a, n, nInv);
+            }
+            a = montMul(a, a, n, nInv);
+            e >>>= 1;
+        }
+        return result;
+    }
+
+    /**
+     * @return the upper 64 bits of the unsigned product of x and y, where y is
+     *         non negative
+     */
+    private static long unsignedMultiplyHigh(long x, long y) {
+        return Math.multiplyHigh(x, y) + ((x >> 63) & y);
+    }
+}
@@ -0,0 +1,173 @@
+package com.ronhorner.primes;
+
+import java.math.BigInteger;
+
+/**
+ * <p>
+ * Lucas sequences V<sub>k</sub>(v) = b<sup>k</sup> + b<sup>-k</sup>, where v
+ * = b + b<sup>-1</sup>, on a {@link MontgomeryContext}, and the stage 2 that
+ * the p-1 and p+1 methods share.
+ * </p>
+ *
+ * <p>
+ * V<sub>k</sub> is found with the ladder V<sub>2k</sub> =
+ * V<sub>k</sub><sup>2</sup> - 2 and V<sub>2k+1</sub> =
+ * V<sub>k</sub>V<sub>k+1</sub> - v, and V<sub>jk</sub>(v) =
+ * V<sub>j</sub>(V<sub>k</sub>(v)), so a stage 1 can apply one prime power
+ * at a time.
+ * </p>
+ *
+ * <p>
+ * Stage 2 looks for a single prime q with B1 &lt; q &le; B2 left in the order
+ * of b. Writing q = mD &plusmn; j with j &le; D/2 and D = {@value #D},
+ * V<sub>mD</sub> - V<sub>j</sub> = b<sup>-mD</sup>(b<sup>mD</sup> -
+ * b<sup>j</sup>)(b<sup>mD</sup> - b<sup>-j</sup>) vanishes modulo p when
+ * b<sup>mD-j</sup> or b<sup>mD+j</sup> is one. So one multiplication covers
+ * both primes of a pair mD - j and mD + j, and the primes of each m are
+ * gathered before their products are taken so that a pair is only counted
+ * once. The baby steps V<sub>j</sub> and the giant steps V<sub>mD</sub> both
+ * follow V<sub>k+d</sub> = V<sub>k</sub>V<sub>d</sub> - V<sub>k-d</sub>.
+ * </p>
+ *
+ * @author Ron Horner
+ */
+final class LucasChain {
+
+    /** The giant step of stage 2, 2*3*5*7*11 */
+    static final int D = 2310;
+
+    /** The arithmetic mod n */
+    private final MontgomeryContext context;
+
+    /** Two in Montgomery form */
+    private final long[] two;
+
+    /** Ladder registers and scratch */
+    private final long[] a, b, t;
+
+    /**
+     * @param context
+     *            the arithmetic mod n, only used from one thread at a time
+     */
+    LucasChain(MontgomeryContext context) {
+        this.context = context;
+        this.two = context.newElement();
+        context.toMontgomery(BigInteger.valueOf(2), two);
+        this.a = context.newElement();
+        this.b = context.newElement();
+        this.t = context.newElement();
+    }
+
+    /**
+     * out := V<sub>k</sub>(v), the output may be v.
+     */
+    void power(long[] v, long k, long[] out) {
+        if (k == 0) {
+            System.arraycopy(two, 0, out, 0, two.length);
+            return;
+        }
+        System.arraycopy(v, 0, a, 0, v.length);
+        context.square(v, b);
+        context.subtract(b, two, b);
+        for (int bit = 62 - Long.numberOfLeadingZeros(k); bit >= 0; bit--) {
+            if (((k >>> bit) & 1) != 0) {
+                context.multiply(a, b, a);
+                context.subtract(a, v, a);
+                context.square(b, b);
+                context.subtract(b, two, b);
+            } else {
+                context.multiply(a, b, b);
+                context.subtract(b, v, b);
+                context.square(a, a);
+                context.subtract(a, two, a);
+            }
+        }
+        System.arraycopy(a, 0, out, 0, a.length);
+    }
+
+    /**
+     * @return gcd(V - 2, n) for V in Montgomery form
+     */
+    BigInteger gcdMinusTwo(long[] v) {
+        context.subtract(v, two, t);
+        return context.toBigInteger(t).gcd(context.getModulus());
+    }
+
+    /**
+     * <p>
+     * The prime pairing stage 2 over the primes in (b1, b2].
+     * </p>
+     *
+     * @param v
+     *            V<sub>E</sub> after stage 1, in Montgomery form
+     * @param b1
+     *            the stage 1 bound, at least 11
+     * @param b2
+     *            the stage 2 bound
+     * @return gcd(n, the product of every V<sub>mD</sub> - V<sub>j</sub>)
+     */
+    BigInteger stageTwo(long[] v, long b1, long b2) {
+        MontgomeryContext c = context;
+
+        // Baby steps V_j for odd j, V_(j+2) = V_j V_2 - V_(j-2)
+        long[][] baby = new long[D / 2 + 1][];
+        long[] v2 = c.newElement();
+        power(v, 2, v2);
+        long[] previous = c.newElement();
+        long[] current = c.newElement();
+        System.arraycopy(v, 0, previous, 0, v.length);
+        c.multiply(v, v2, current);
+        c.subtract(current, v, current);
+        baby[1] = previous.clone();
+        for (int j = 3; j <= D / 2; j += 2) {
+            if (j > 3) {
+                c.multiply(current, v2, t);
+                c.subtract(t, previous, previous);
+                long[] swap = previous;
+                previous = current;
+                current = swap;
+            }
+            if (j % 3 != 0 && j % 5 != 0 && j % 7 != 0 && j % 11 != 0) {
+                baby[j] = current.clone();
+            }
+        }
+
+        // Giant steps V_mD and V_(m-1)D from the m of the first prime above b1
+        long[] step = c.newElement();
+        power(v, D, step);
+        long m = (b1 + 1 + D / 2) / D;
+        long[] giant = c.newElement();
+        power(step, m, giant);
+        power(step, Math.abs(m - 1), previous);
+
+        long[] acc = c.newElement();
+        c.toMontgomery(BigInteger.ONE, acc);
+        boolean[] marked = new boolean[D / 2 + 1];
+        PrimeIterator primes = new PrimeIterator(b1 + 1, b2);
+        for (long q = primes.nextPrime(); ; q = primes.nextPrime()) {
+            long mq = q < 0 ? -1 : (q + D / 2) / D;
+            if (mq != m) {
+                // Every prime of this m has been seen, so each pair is taken once
+                for (int j = 1; j <= D / 2; j += 2) {
+                    if (marked[j]) {
+                        marked[j] = false;
+                        c.subtract(giant, baby[j], t);
+                        c.multiply(acc, t, acc);
+                    }
+                }
+                if (q < 0) {
+                    break;
+                }
+                for (; m < mq; m++) {
+                    c.multiply(giant, step, t);
+                    c.subtract(t, previous, previous);
+                    long[] swap = previous;
+                    previous = giant;
+                    giant = swap;
+                }
+            }
+            marked[(int) Math.abs(q - m * D)] = true;
+        }
+        return c.toBigInteger(acc).gcd(c.getModulus());
+    }
+}
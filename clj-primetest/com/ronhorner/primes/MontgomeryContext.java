@@ -0,0 +1,374 @@
+package com.ronhorner.primes;
+
+import java.math.BigInteger;
+
+/**
+ * <p>
+ * Montgomery arithmetic modulo one fixed odd modulus of up to
+ * {@link #MAX_BITS} bits, on little endian <code>long[]</code> limbs of 64
+ * bits.
+ * </p>
+ *
+ * <p>
+ * The constants -n<sup>-1</sup> mod 2<sup>64</sup>, R mod n and
+ * R<sup>2</sup> mod n, where R = 2<sup>64k</sup> for a modulus of <i>k</i>
+ * limbs, are found once when the context is made. Multiplication is the
+ * coarsely integrated operand scanning (CIOS) method, with the upper half of
+ * each limb product from <code>Math.multiplyHigh</code> as in
+ * {@link LongPrimality}, into a scratch buffer owned by the context, so once
+ * a witness has been converted into Montgomery form every multiplication and
+ * squaring runs without allocating. One context serves all of the witnesses
+ * of a test.
+ * </p>
+ *
+ * <p>
+ * A single long exponentiation is still faster with
+ * <code>BigInteger.modPow</code>, whose Montgomery multiplication is a
+ * HotSpot intrinsic written in assembly, about three to four times faster per
+ * product than this loop from 128 to 4096 bits. What a context saves is the
+ * setup: each <code>modPow</code> call derives its own Montgomery constants,
+ * so a chain of squarings or a run of products modulo the same number costs
+ * a few times less here than with repeated <code>modPow</code> or
+ * <code>multiply(...).mod(...)</code> calls.
+ * </p>
+ *
+ * <p>
+ * <a href="http://en.wikipedia.org/wiki/Montgomery_modular_multiplication">
+ * http://en.wikipedia.org/wiki/Montgomery_modular_multiplication </a>
+ * </p>
+ *
+ * <p>
+ * A context holds mutable scratch space and is not safe to share between
+ * threads.
+ * </p>
+ *
+ * @author Ron Horner
+ */
+public final class MontgomeryContext {
+
+    /** The largest modulus supported, in bits */
+    public static final int MAX_BITS = 4096;
+
+    /** The modulus */
+    private final BigInteger modulus;
+
+    /** The number of limbs */
+    private final int k;
+
+    /** The limbs of the modulus */
+    private final long[] n;
+
+    /** -n^-1 mod 2^64 */
+    private final long nPrime;
+
+    /** R mod n, one in Montgomery form */
+    private final long[] one;
+
+    /** n - (R mod n), minus one in Montgomery form */
+    private final long[] minusOne;
+
+    /** R^2 mod n, used to convert into Montgomery form */
+    private final long[] r2;
+
+    /** The product accumulator, k + 2 limbs */
+    private final long[] t;
+
+    /** The value being squared by {@link #squaresToMinusOne(BigInteger, int)} */
+    private final long[] acc;
+
+    /**
+     * Creates a context for an odd modulus.
+     *
+     * @param modulus
+     *            the odd modulus, greater than one and at most MAX_BITS bits
+     */
+    public MontgomeryContext(BigInteger modulus) {
+        if (modulus.signum() <= 0 || !modulus.testBit(0) || modulus.equals(BigInteger.ONE)
+                || modulus.bitLength() > MAX_BITS) {
+            throw new IllegalArgumentException("Invalid Montgomery modulus " + modulus);
+        }
+        this.modulus = modulus;
+        k = (modulus.bitLength() + 63) >>> 6;
+        n = toLimbs(modulus, k);
+        nPrime = -LongPrimality.inverse(n[0]);
+
+        BigInteger r = BigInteger.ONE.shiftLeft(64 * k).mod(modulus);
+        one = toLimbs(r, k);
+        minusOne = toLimbs(modulus.subtract(r), k);
+        r2 = toLimbs(r.multiply(r).mod(modulus), k);
+        t = new long[k + 2];
+        acc = new long[k];
+    }
+
+    /**
+     * @return the modulus
+     */
+    public BigInteger getModulus() {
+        return modulus;
+    }
+
+    /**
+     * @return a new element of this context, zero
+     */
+    public long[] newElement() {
+        return new long[k];
+    }
+
+    /**
+     * Converts a number into Montgomery form.
+     *
+     * @param a
+     *            the number, any value is reduced mod n first
+     * @param out
+     *            receives a * R mod n
+     */
+    public void toMontgomery(BigInteger a, long[] out) {
+        if (a.signum() < 0 || a.compareTo(modulus) >= 0) {
+            a = a.mod(modulus);
+        }
+        long[] limbs = toLimbs(a, k);
+        multiply(limbs, r2, out);
+    }
+
+    /**
+     * Converts an element out of Montgomery form.
+     *
+     * @param a
+     *            the element
+     * @return a * R^-1 mod n
+     */
+    public BigInteger toBigInteger(long[] a) {
+        long[] unit = new long[k];
+        unit[0] = 1;
+        long[] rval = new long[k];
+        multiply(a, unit, rval);
+        return fromLimbs(rval);
+    }
+
+    /**
+     * @return true if a is one in Montgomery form
+     */
+    public boolean isOne(long[] a) {
+        return equal(a, one);
+    }
+
+    /**
+     * @return true if a is n-1 in Montgomery form
+     */
+    public boolean isMinusOne(long[] a) {
+        return equal(a, minusOne);
+    }
+
+    /**
+     * <p>
+     * Montgomery multiplication, out = a * b * R<sup>-1</sup> mod n. The
+     * output may be the same array as either input.
+     * </p>
+     *
+     * @param a
+     *            the first factor, less than n
+     * @param b
+     *            the second factor, less than n
+     * @param out
+     *            receives the product
+     */
+    public void multiply(long[] a, long[] b, long[] out) {
+        long[] t = this.t;
+        long[] n = this.n;
+        int k = this.k;
+        for (int j = 0; j < k + 2; j++) {
+            t[j] = 0;
+        }
+        for (int i = 0; i < k; i++) {
+            long ai = a[i];
+            long c = 0;
+            for (int j = 0; j < k; j++) {
+                // (c, t[j]) = t[j] + ai * b[j] + c
+                long bj = b[j];
+                long lo = ai * bj;
+                long hi = unsignedMultiplyHigh(ai, bj);
+                long sum = lo + t[j];
+                hi += Long.compareUnsigned(sum, lo) < 0 ? 1 : 0;
+                lo = sum + c;
+                hi += Long.compareUnsigned(lo, sum) < 0 ? 1 : 0;
+                t[j] = lo;
+                c = hi;
+            }
+            long sum = t[k] + c;
+            t[k] = sum;
+            t[k + 1] = Long.compareUnsigned(sum, c) < 0 ? 1 : 0;
+
+            // Add m * n so the low limb becomes zero and shift down one limb
+            long m = t[0] * nPrime;
+            long lo = m * n[0];
+            c = unsignedMultiplyHigh(m, n[0]) + (Long.compareUnsigned(lo + t[0], lo) < 0 ? 1 : 0);
+            for (int j = 1; j < k; j++) {
+                long nj = n[j];
+                lo = m * nj;
+                long hi = unsignedMultiplyHigh(m, nj);
+                sum = lo + t[j];
+                hi += Long.compareUnsigned(sum, lo) < 0 ? 1 : 0;
+                lo = sum + c;
+                hi += Long.compareUnsigned(lo, sum) < 0 ? 1 : 0;
+                t[j - 1] = lo;
+                c = hi;
+            }
+            sum = t[k] + c;
+            t[k - 1] = sum;
+            t[k] = t[k + 1] + (Long.compareUnsigned(sum, c) < 0 ? 1 : 0);
+        }
+        System.arraycopy(t, 0, out, 0, k);
+        if (t[k] != 0 || !less(t, n, k)) {
+            subtractModulus(out);
+        }
+    }
+
+    /**
+     * a := a - n, dropping the borrow out of the top limb.
+     */
+    private void subtractModulus(long[] a) {
+        long borrow = 0;
+        for (int j = 0; j < k; j++) {
+            long aj = a[j];
+            long diff = aj - n[j] - borrow;
+            borrow = Long.compareUnsigned(aj, n[j]) < 0 || (borrow != 0 && aj == n[j]) ? 1 : 0;
+            a[j] = diff;
+        }
+    }
+
+    /**
+     * out = a + b mod n, the output may be the same array as either input.
+     */
+    public void add(long[] a, long[] b, long[] out) {
+        long carry = 0;
+        for (int j = 0; j < k; j++) {
+            long aj = a[j];
+            long sum = aj + b[j];
+            long c = Long.compareUnsigned(sum, aj) < 0 ? 1 : 0;
+            long total = sum + carry;
+            c += Long.compareUnsigned(total, sum) < 0 ? 1 : 0;
+            out[j] = total;
+            carry = c;
+        }
+        if (carry != 0 || !less(out, n, k)) {
+            subtractModulus(out);
+        }
+    }
+
+    /**
+     * out = a - b mod n, the output may be the same array as either input.
+     */
+    public void subtract(long[] a, long[] b, long[] out) {
+        long borrow = 0;
+        for (int j = 0; j < k; j++) {
+            long aj = a[j];
+            long bj = b[j];
+            long diff = aj - bj - borrow;
+            borrow = Long.compareUnsigned(aj, bj) < 0 || (borrow != 0 && aj == bj) ? 1 : 0;
+            out[j] = diff;
+        }
+        if (borrow != 0) {
+            long carry = 0;
+            for (int j = 0; j < k; j++) {
+                long oj = out[j];
+                long sum = oj + n[j];
+                long c = Long.compareUnsigned(sum, oj) < 0 ? 1 : 0;
+                long total = sum + carry;
+                c += Long.compareUnsigned(total, sum) < 0 ? 1 : 0;
+                out[j] = total;
+                carry = c;
+            }
+        }
+    }
+
+    /**
+     * out = a^2 * R^-1 mod n, the output may be the same array as a.
+     */
+    public void square(long[] a, long[] out) {
+        multiply(a, a, out);
+    }
+
+    /**
+     * <p>
+     * The squaring steps of one Miller-Rabin round. With n-1 =
+     * 2<sup>s</sup> * d and y = a<sup>d</sup> mod n already found and neither
+     * 1 nor n-1, the round passes if one of y<sup>2</sup>, y<sup>4</sup>, ...,
+     * y<sup>2<sup>s-1</sup></sup> is n-1.
+     * </p>
+     *
+     * @param y
+     *            a^d mod n
+     * @param s
+     *            the power of two in n-1
+     * @return false if the witness proves n composite
+     */
+    public boolean squaresToMinusOne(BigInteger y, int s) {
+        long[] a = acc;
+        toMontgomery(y, a);
+        for (int j = 1; j < s; j++) {
+            multiply(a, a, a);
+            if (isMinusOne(a)) {
+                return true;
+            }
+            if (isOne(a)) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the upper 64 bits of the unsigned product of x and y
+     */
+    private static long unsignedMultiplyHigh(long x, long y) {
+        return Math.multiplyHigh(x, y) + ((x >> 63) & y) + ((y >> 63) & x);
+    }
+
+    /**
+     * @return true if a and b hold the same element
+     */
+    private boolean equal(long[] a, long[] b) {
+        for (int i = 0; i < k; i++) {
+            if (a[i] != b[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the first k limbs of a are less than those of b
+     */
+    private static boolean less(long[] a, long[] b, int k) {
+        for (int i = k - 1; i >= 0; i--) {
+            if (a[i] != b[i]) {
+                return Long.compareUnsigned(a[i], b[i]) < 0;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the k low limbs of a non negative number
+     */
+    static long[] toLimbs(BigInteger a, int k) {
+        long[] rval = new long[k];
+        byte[] bytes = a.toByteArray();
+        for (int i = 0; i < bytes.length && i < 8 * k; i++) {
+            long b = bytes[bytes.length - 1 - i] & 0xff;
+            rval[i >>> 3] |= b << (8 * (i & 7));
+        }
+        return rval;
+    }
+
+    /**
+     * @return the non negative number held in the limbs
+     */
+    private static BigInteger fromLimbs(long[] a) {
+        byte[] bytes = new byte[8 * a.length + 1];
+        for (int i = 0; i < 8 * a.length; i++) {
+            bytes[bytes.length - 1 - i] = (byte) (a[i >>> 3] >>> (8 * (i & 7)));
+        }
+        return new BigInteger(bytes);
+    }
+}
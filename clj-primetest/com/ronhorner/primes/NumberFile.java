@@ -0,0 +1,366 @@
+package com.ronhorner.primes;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * <p>
+ * A binary file of numbers that is read and written through memory mapped
+ * buffers instead of parsing decimal text.
+ * </p>
+ *
+ * <p>
+ * The file is a 32 byte header followed by two sections. The header holds
+ * the magic number, the version, the number of longs, the number of big
+ * integers and eight reserved bytes. The long section holds every number
+ * below 2<sup>63</sup> as a fixed width 64 bit value, so any run of it can be
+ * handed out as a <code>LongBuffer</code> view of the mapping without
+ * copying. The big integer section follows it and holds each larger number
+ * as a four byte length and the two's complement bytes of
+ * {@link BigInteger#toByteArray()}. All values are big endian.
+ * </p>
+ *
+ * <p>
+ * A file is mapped a window at a time, at most {@link #WINDOW_BYTES} bytes,
+ * so files larger than the heap or than a single mapping can be scanned.
+ * </p>
+ *
+ * @author Ron Horner
+ */
+public class NumberFile implements Closeable {
+
+    /** The first four bytes of every number file, "NUM1" */
+    public static final int MAGIC = 0x4E554D31;
+
+    /** The version of the format written by this class */
+    public static final int VERSION = 1;
+
+    /** The size of the header in bytes */
+    static final int HEADER_BYTES = 32;
+
+    /** The largest region mapped at once when reading */
+    public static final int WINDOW_BYTES = 1 << 30;
+
+    /** The file being read */
+    private final FileChannel channel;
+
+    /** The number of longs in the file */
+    private final long longCount;
+
+    /** The number of big integers in the file */
+    private final long bigCount;
+
+    /** The offset of the big integer section */
+    private final long bigStart;
+
+    /** The size of the file */
+    private final long size;
+
+    /**
+     * Opens a number file for reading.
+     *
+     * @param path
+     *            the file
+     * @throws IOException
+     *             if the file can not be read or is not a number file
+     */
+    public NumberFile(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            size = channel.size();
+            if (size < HEADER_BYTES) {
+                throw new IOException(path + " is not a number file");
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException(path + " is not a number file");
+            }
+            if (header.getInt(4) != VERSION) {
+                throw new IOException("Unsupported number file version " + header.getInt(4));
+            }
+            longCount = header.getLong(8);
+            bigCount = header.getLong(16);
+            bigStart = HEADER_BYTES + 8 * longCount;
+            if (longCount < 0 || bigCount < 0 || bigStart > size) {
+                throw new IOException(path + " is truncated");
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Checks the first bytes of a file for the magic number.
+     *
+     * @param path
+     *            the file
+     * @return true if the file starts like a number file
+     * @throws IOException
+     *             if the file can not be read
+     */
+    public static boolean isNumberFile(Path path) throws IOException {
+        InputStream in = Files.newInputStream(path);
+        try {
+            int magic = 0;
+            for (int i = 0; i < 4; i++) {
+                int b = in.read();
+                if (b < 0) {
+                    return false;
+                }
+                magic = (magic << 8) | b;
+            }
+            return magic == MAGIC;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Creates a number file for writing, replacing any existing file.
+     *
+     * @param path
+     *            the file
+     * @return a writer that must be closed to complete the file
+     * @throws IOException
+     *             if the file can not be created
+     */
+    public static Writer create(Path path) throws IOException {
+        return new Writer(path);
+    }
+
+    /**
+     * @return the number of longs in the file
+     */
+    public long getLongCount() {
+        return longCount;
+    }
+
+    /**
+     * @return the number of big integers in the file
+     */
+    public long getBigCount() {
+        return bigCount;
+    }
+
+    /**
+     * Maps a run of the long section. The buffer reads straight from the
+     * file, nothing is copied onto the heap.
+     *
+     * @param from
+     *            the index of the first long
+     * @param count
+     *            the number of longs, at most WINDOW_BYTES / 8
+     * @return a read only view of longs [from, from + count)
+     * @throws IOException
+     *             if the file can not be mapped
+     */
+    public LongBuffer longs(long from, int count) throws IOException {
+        if (from < 0 || count < 0 || count > WINDOW_BYTES / 8 || from + count > longCount) {
+            throw new IndexOutOfBoundsException("Invalid long range " + from + " + " + count);
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES + 8 * from, 8L * count).asLongBuffer();
+    }
+
+    /**
+     * Passes every long in the file to <i>action</i> in order.
+     *
+     * @param action
+     *            receives each long
+     * @throws IOException
+     *             if the file can not be mapped
+     */
+    public void forEachLong(LongConsumer action) throws IOException {
+        for (long from = 0; from < longCount; from += WINDOW_BYTES / 8) {
+            LongBuffer window = longs(from, (int) Math.min(WINDOW_BYTES / 8, longCount - from));
+            while (window.hasRemaining()) {
+                action.accept(window.get());
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Passes every big integer in the file to <i>action</i> in order. A
+     * window is remapped from the start of the first number that does not fit
+     * in it, so a number never straddles two mappings.
+     * </p>
+     *
+     * @param action
+     *            receives each big integer
+     * @throws IOException
+     *             if the file can not be mapped or the section is truncated
+     */
+    public void forEachBig(Consumer<BigInteger> action) throws IOException {
+        long offset = bigStart;
+        long read = 0;
+        while (read < bigCount) {
+            long length = Math.min(WINDOW_BYTES, size - offset);
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+            int start = 0;
+            while (read < bigCount && window.remaining() >= 4) {
+                int bytes = window.getInt(window.position());
+                if (bytes <= 0 || bytes > window.remaining() - 4) {
+                    break;
+                }
+                window.position(window.position() + 4);
+                byte[] magnitude = new byte[bytes];
+                window.get(magnitude);
+                action.accept(new BigInteger(magnitude));
+                start = window.position();
+                read++;
+            }
+            if (read < bigCount && start == 0) {
+                throw new IOException("Truncated big integer at offset " + offset);
+            }
+            offset += start;
+        }
+    }
+
+    /**
+     * Closes the file.
+     */
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * <p>
+     * Writes a number file through a memory mapped window that moves along
+     * the file as it grows. Every long must be written before the first big
+     * integer, since the long section comes first. The header is filled in
+     * and the file cut to its real size by {@link #close()}.
+     * </p>
+     */
+    public static class Writer implements Closeable {
+
+        /** The size of the region mapped at once when writing */
+        private static final int WINDOW_BYTES = 1 << 26;
+
+        /** The file being written */
+        private final FileChannel channel;
+
+        /** The current window */
+        private MappedByteBuffer window;
+
+        /** The file offset of the start of the window */
+        private long windowStart;
+
+        /** The number of longs written */
+        private long longCount;
+
+        /** The number of big integers written */
+        private long bigCount;
+
+        /**
+         * Creates the file and maps the first window.
+         */
+        private Writer(Path path) throws IOException {
+            channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+            windowStart = 0;
+            window = channel.map(FileChannel.MapMode.READ_WRITE, 0, WINDOW_BYTES);
+            window.position(HEADER_BYTES);
+        }
+
+        /**
+         * Writes a number to the long section if it fits and no big integer
+         * has been written yet, otherwise to the big integer section.
+         *
+         * @param n
+         *            the number
+         * @throws IOException
+         *             if the file can not be mapped
+         */
+        public void write(BigInteger n) throws IOException {
+            if (bigCount == 0 && n.bitLength() < 64) {
+                writeLong(n.longValue());
+            } else {
+                writeBig(n);
+            }
+        }
+
+        /**
+         * Writes a number to the long section.
+         *
+         * @param n
+         *            the number
+         * @throws IOException
+         *             if the file can not be mapped
+         * @throws IllegalStateException
+         *             if a big integer has already been written
+         */
+        public void writeLong(long n) throws IOException {
+            if (bigCount != 0) {
+                throw new IllegalStateException("Longs must be written before big integers");
+            }
+            ensure(8);
+            window.putLong(n);
+            longCount++;
+        }
+
+        /**
+         * Writes a number to the big integer section.
+         *
+         * @param n
+         *            the number
+         * @throws IOException
+         *             if the file can not be mapped
+         */
+        public void writeBig(BigInteger n) throws IOException {
+            byte[] bytes = n.toByteArray();
+            ensure(4 + bytes.length);
+            window.putInt(bytes.length);
+            window.put(bytes);
+            bigCount++;
+        }
+
+        /**
+         * @return the number of numbers written so far
+         */
+        public long getCount() {
+            return longCount + bigCount;
+        }
+
+        /**
+         * Moves the window along when it has less than <i>bytes</i> left.
+         */
+        private void ensure(int bytes) throws IOException {
+            if (window.remaining() < bytes) {
+                windowStart += window.position();
+                window.force();
+                window = channel.map(FileChannel.MapMode.READ_WRITE, windowStart, Math.max(WINDOW_BYTES, bytes));
+            }
+        }
+
+        /**
+         * Writes the header, cuts the file to the data written and closes it.
+         */
+        public void close() throws IOException {
+            try {
+                long end = windowStart + window.position();
+                window.force();
+                window = null;
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                header.putInt(MAGIC).putInt(VERSION).putLong(longCount).putLong(bigCount).putLong(0);
+                header.flip();
+                channel.write(header, 0);
+                channel.truncate(end);
+                channel.force(true);
+            } finally {
+                channel.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.ronhorner.primes;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.LongConsumer;
+
+/**
+ * <p>
+ * Runs a {@link SegmentedSieve} on every core of the machine.
+ * </p>
+ *
+ * <p>
+ * The interval [<i>lo</i>, <i>hi</i>] is split into independent chunks of
+ * consecutive segments which are sieved as tasks on a
+ * <code>ForkJoinPool</code>. When only the number of primes is wanted the
+ * chunk counts are summed and no prime is ever stored. When the primes
+ * themselves are wanted the chunks are handed back in order through a
+ * bounded reorder buffer: at most <i>window</i> chunks are in flight, and the
+ * oldest one is emitted before another one is started, so the memory used
+ * stays fixed no matter how long the interval is.
+ * </p>
+ *
+ * @author Ron Horner
+ */
+public class ParallelSieve {
+
+    /** The default number of integers sieved by one task */
+    public static final long DEFAULT_CHUNK_SIZE = 1L << 23;
+
+    /** The sieve that holds the sieving primes shared by every task */
+    private final SegmentedSieve sieve;
+
+    /** The number of worker threads */
+    private final int threads;
+
+    /** The number of integers sieved by one task */
+    private final long chunkSize;
+
+    /** The most chunks that may be waiting in the reorder buffer */
+    private final int window;
+
+    /**
+     * Creates a parallel sieve over [lo, hi] using every available processor.
+     *
+     * @param lo
+     *            the lower bound of the interval
+     * @param hi
+     *            the upper bound of the interval
+     */
+    public ParallelSieve(long lo, long hi) {
+        this(lo, hi, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a parallel sieve over [lo, hi].
+     *
+     * @param lo
+     *            the lower bound of the interval
+     * @param hi
+     *            the upper bound of the interval
+     * @param threads
+     *            the number of worker threads
+     */
+    public ParallelSieve(long lo, long hi, int threads) {
+        this(lo, hi, threads, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Creates a parallel sieve over [lo, hi].
+     *
+     * @param lo
+     *            the lower bound of the interval
+     * @param hi
+     *            the upper bound of the interval
+     * @param threads
+     *            the number of worker threads
+     * @param chunkSize
+     *            the number of integers sieved by one task
+     */
+    public ParallelSieve(long lo, long hi, int threads, long chunkSize) {
+        if (threads < 1 || chunkSize < 2) {
+            throw new IllegalArgumentException("Invalid thread count " + threads + " or chunk size " + chunkSize);
+        }
+        this.sieve = new SegmentedSieve(lo, hi);
+        this.threads = threads;
+        this.chunkSize = chunkSize & ~1L;
+        this.window = 2 * threads;
+    }
+
+    /**
+     * Counts the primes in the interval without producing them.
+     *
+     * @return the number of primes in [lo, hi]
+     */
+    public long count() {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return pool.invoke(new CountTask(sieve.getLow(), sieve.getHigh()));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Passes every prime in the interval to <i>action</i> in increasing order.
+     * The action is always called from the calling thread.
+     *
+     * @param action
+     *            receives each prime
+     * @return the number of primes found
+     */
+    public long forEachPrime(LongConsumer action) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        ArrayDeque<ForkJoinTask<long[]>> pending = new ArrayDeque<ForkJoinTask<long[]>>(window);
+        long count = 0;
+        try {
+            long next = sieve.getLow();
+            long hi = sieve.getHigh();
+            while (next <= hi || !pending.isEmpty()) {
+                while (next <= hi && pending.size() < window) {
+                    long to = next + chunkSize - 1;
+                    if (to > hi || to < next) {
+                        to = hi;
+                    }
+                    pending.add(pool.submit(new CollectTask(next, to)));
+                    next = to + 1;
+                }
+                long[] primes = pending.poll().join();
+                for (int i = 0; i < primes.length; i++) {
+                    action.accept(primes[i]);
+                }
+                count += primes.length;
+            }
+        } finally {
+            for (ForkJoinTask<long[]> task : pending) {
+                task.cancel(false);
+            }
+            pool.shutdown();
+        }
+        return count;
+    }
+
+    /**
+     * Counts the primes in a range, splitting it in half until it is no
+     * longer than one chunk.
+     */
+    private class CountTask extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+
+        /** The lower bound of the range */
+        private final long from;
+
+        /** The upper bound of the range */
+        private final long to;
+
+        CountTask(long from, long to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        protected Long compute() {
+            if (to - from < chunkSize) {
+                return sieve.sieve(from, to, null);
+            }
+            long middle = from + ((to - from) >>> 1);
+            CountTask left = new CountTask(from, middle);
+            left.fork();
+            long right = new CountTask(middle + 1, to).compute();
+            return left.join() + right;
+        }
+    }
+
+    /**
+     * Sieves one chunk and returns its primes.
+     */
+    private class CollectTask extends RecursiveTask<long[]> {
+        private static final long serialVersionUID = 1L;
+
+        /** The lower bound of the chunk */
+        private final long from;
+
+        /** The upper bound of the chunk */
+        private final long to;
+
+        CollectTask(long from, long to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        protected long[] compute() {
+            PrimeBuffer buffer = new PrimeBuffer();
+            sieve.sieve(from, to, buffer);
+            return buffer.toArray();
+        }
+    }
+
+    /**
+     * A growable array of primitive longs.
+     */
+    private static class PrimeBuffer implements LongConsumer {
+        /** The primes collected so far */
+        private long[] primes = new long[1024];
+
+        /** The number of primes collected */
+        private int size = 0;
+
+        public void accept(long p) {
+            if (size == primes.length) {
+                primes = Arrays.copyOf(primes, size * 2);
+            }
+            primes[size++] = p;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(primes, size);
+        }
+    }
+}
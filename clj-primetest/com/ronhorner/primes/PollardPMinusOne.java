@@ -0,0 +1,92 @@
+package com.ronhorner.primes;
+
+import java.math.BigInteger;
+
+/**
+ * <p>
+ * Pollard's p-1 method, which finds a prime factor p of n when p-1 is smooth.
+ * </p>
+ *
+ * <p>
+ * By Fermat's little theorem a<sup>E</sup> = 1 mod p whenever p-1 divides E.
+ * Stage 1 takes E as the product of every prime power up to B1, found with a
+ * {@link PrimeIterator}, and raises a = {@value #BASE} to it a batch of primes
+ * at a time with <code>BigInteger.modPow</code>, whose multiplication is
+ * faster than any exponentiation written in Java. Then gcd(a<sup>E</sup> -
+ * 1, n) holds every p with B1-smooth p-1.
+ * </p>
+ *
+ * <p>
+ * Stage 2 allows one more prime of p-1 up to B2. It is the prime pairing
+ * stage 2 of {@link LucasChain} on b + b<sup>-1</sup> with b =
+ * a<sup>E</sup>, which covers two primes mD &plusmn; j with one
+ * multiplication.
+ * </p>
+ *
+ * <p>
+ * <a href="http://en.wikipedia.org/wiki/Pollard%27s_p_%E2%88%92_1_algorithm">
+ * http://en.wikipedia.org/wiki/Pollard%27s_p_%E2%88%92_1_algorithm </a>
+ * </p>
+ *
+ * @author Ron Horner
+ */
+public class PollardPMinusOne {
+
+    /** The base that is raised to the stage 1 exponent */
+    public static final int BASE = 3;
+
+    /** The size in bits of the exponent batches given to modPow */
+    private static final int BATCH_BITS = 1024;
+
+    /**
+     * Looks for a factor of n.
+     *
+     * @param n
+     *            an odd composite of at most {@link MontgomeryContext#MAX_BITS}
+     *            bits
+     * @param b1
+     *            the stage 1 bound, at least 11
+     * @param b2
+     *            the stage 2 bound, no stage 2 when it is at most b1
+     * @return a proper factor of n, or null if none was found
+     */
+    public BigInteger findFactor(BigInteger n, long b1, long b2) {
+        if (!n.testBit(0) || n.bitLength() < 2 || n.bitLength() > MontgomeryContext.MAX_BITS) {
+            throw new IllegalArgumentException("The p-1 method can not factor " + n);
+        }
+        if (b1 < 11 || b2 > SegmentedSieve.MAX_BOUND) {
+            throw new IllegalArgumentException("Invalid bounds B1 = " + b1 + ", B2 = " + b2);
+        }
+        BigInteger a = BigInteger.valueOf(BASE);
+        BigInteger g = a.gcd(n);
+        if (!g.equals(BigInteger.ONE)) {
+            return g.equals(n) ? null : g;
+        }
+        BigInteger exponent = BigInteger.ONE;
+        PrimeIterator primes = new PrimeIterator(2, b1);
+        for (long p = primes.nextPrime(); p > 0; p = primes.nextPrime()) {
+            long q = p;
+            while (q <= b1 / p) {
+                q *= p;
+            }
+            exponent = exponent.multiply(BigInteger.valueOf(q));
+            if (exponent.bitLength() >= BATCH_BITS) {
+                a = a.modPow(exponent, n);
+                exponent = BigInteger.ONE;
+            }
+        }
+        a = a.modPow(exponent, n);
+        g = a.subtract(BigInteger.ONE).gcd(n);
+        if (!g.equals(BigInteger.ONE)) {
+            return g.equals(n) ? null : g;
+        }
+        if (b2 <= b1) {
+            return null;
+        }
+        MontgomeryContext context = new MontgomeryContext(n);
+        long[] v = context.newElement();
+        context.toMontgomery(a.add(a.modInverse(n)), v);
+        g = new LucasChain(context).stageTwo(v, b1, b2);
+        return g.equals(BigInteger.ONE) || g.equals(n) ? null : g;
+    }
+}
@@ -0,0 +1,22 @@
+package com.ronhorner.primes;
+
+import java.math.BigInteger;
+
+/**
+ * <p>
+ * A primality test that can be handed to the batch and search classes.
+ * {@link PrimeUtils#getTest(int, int)} wraps each of the tests in
+ * {@link PrimeUtils}.
+ * </p>
+ *
+ * @author Ron Horner
+ */
+public interface PrimalityTest {
+
+    /**
+     * @param n
+     *            the number in question
+     * @return true if n is prime, or probably prime for the random tests
+     */
+    boolean isPrime(BigInteger n);
+}
@@ -0,0 +1,773 @@
+package com.ronhorner.primes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * <p>
+ * Counts the primes up to <i>x</i> without finding each one, with the
+ * Lagarias-Miller-Odlyzko form of the Meissel-Lehmer method.
+ * </p>
+ *
+ * <p>
+ * Let y = &alpha;x<sup>1/3</sup> and a = &pi;(y). Then &pi;(x) = &phi;(x, a) +
+ * a - 1 - P2(x, a), where &phi;(x, a) counts the numbers up to x with no prime
+ * factor among the first a primes and P2(x, a) counts those of them with
+ * exactly two prime factors. None has three, because y is at least
+ * x<sup>1/3</sup>.
+ * </p>
+ *
+ * <p>
+ * P2 is the sum of &pi;(x/p) - &pi;(p) + 1 over the primes y &lt; p &lt;=
+ * &radic;x. All of the x/p are below x/y, so it takes one {@link SegmentedSieve}
+ * pass up to x/y that records the count at each of them. The pass goes up a
+ * window at a time and the p for each window are sieved as it is reached, in
+ * decreasing order, so they are never all held at once.
+ * </p>
+ *
+ * <p>
+ * &phi;(x, a) is expanded with &phi;(x, b) = &phi;(x, b-1) - &phi;(x/p<sub>b</sub>,
+ * b-1) into ordinary leaves &mu;(n)&phi;(x/n, c), for the square free n &lt;=
+ * y, and special leaves -&mu;(m)&phi;(x/(p<sub>b</sub>m), b-1) with m &lt;= y
+ * &lt; p<sub>b</sub>m. The ordinary leaves are read from a table of &phi;(n,
+ * c) for the first c = 6 primes. The special leaves are all below x/y, so
+ * [1, x/y] is sieved in segments, crossing off p<sub>1</sub>, p<sub>2</sub>,
+ * ... in turn and answering the leaves of p<sub>b</sub> in a segment just
+ * before p<sub>b</sub> is crossed off. A counter per block of 512 numbers lets
+ * the count of what is left below a leaf be found without counting the whole
+ * segment.
+ * </p>
+ *
+ * <p>
+ * The time grows like x<sup>2/3</sup> and the memory like x<sup>1/3</sup>.
+ * With an executor both sieves are split into blocks that run at once. A
+ * block of the special leaf sieve counts from zero, and the leaves it answers
+ * are corrected by the counts of the blocks below it once those are known.
+ * </p>
+ *
+ * <p>
+ * <a href="http://en.wikipedia.org/wiki/Prime-counting_function#Algorithms_for_evaluating_.CF.80.28x.29">
+ * http://en.wikipedia.org/wiki/Prime-counting_function </a>
+ * </p>
+ *
+ * @author Ron Horner
+ */
+public class PrimeCounter {
+
+    /** The largest x that can be counted */
+    public static final long MAX_X = 1000000000000000000L;
+
+    /** The Euler-Mascheroni constant */
+    private static final double GAMMA = 0.5772156649015329;
+
+    /** Below this the n-th prime is found with one sieve */
+    private static final long SMALL_NTH = 100000;
+
+    /** Below this the primes are simply sieved and counted */
+    private static final long SIEVE_LIMIT = 1 << 16;
+
+    /** The number of primes in the table of phi(n, c) */
+    private static final int PHI_C = 6;
+
+    /** The number of integers sieved at once for the special leaves */
+    private static final int SEGMENT = 1 << 18;
+
+    /** The number of integers sieved at once for P2 */
+    private static final long P2_WINDOW = 1 << 22;
+
+    /** The number of words in a block with its own counter */
+    private static final int CHUNK_WORDS = 8;
+
+    /** log2 of CHUNK_WORDS */
+    private static final int CHUNK_SHIFT = 3;
+
+    /** The number of blocks given to each worker thread */
+    private static final int BLOCKS_PER_THREAD = 16;
+
+    /** Runs the blocks of the sieves, or null to run them on the calling thread */
+    private final ExecutorService executor;
+
+    /** The number of threads the executor has */
+    private final int parallelism;
+
+    /**
+     * Creates a counter that runs on the calling thread.
+     */
+    public PrimeCounter() {
+        this(null, 1);
+    }
+
+    /**
+     * Creates a counter.
+     *
+     * @param executor
+     *            runs the blocks of the sieves, it is not shut down by this
+     *            class, or null to count on the calling thread
+     * @param parallelism
+     *            the number of threads the executor has
+     */
+    public PrimeCounter(ExecutorService executor, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Invalid parallelism " + parallelism);
+        }
+        this.executor = executor;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Counts the primes less than or equal to <i>x</i>.
+     *
+     * @param x
+     *            the bound, at most {@link #MAX_X}
+     * @return &pi;(x)
+     */
+    public long pi(long x) {
+        if (x < 0 || x > MAX_X) {
+            throw new IllegalArgumentException("Can not count the primes up to " + x);
+        }
+        if (x < SIEVE_LIMIT) {
+            return new SegmentedSieve(0, x).count();
+        }
+        return new Count(x).pi();
+    }
+
+    /**
+     * <p>
+     * Finds the n-th prime, so that nthPrime(1) is 2.
+     * </p>
+     *
+     * <p>
+     * The prime is first placed with the inverse of li(x) - li(&radic;x)/2,
+     * which is within about &radic;x of it. The primes up to that estimate are
+     * counted with {@link #pi(long)} and the rest of the way is sieved with a
+     * {@link SegmentedSieve}, a window at a time, up or down as the count
+     * falls short of n or passes it.
+     * </p>
+     *
+     * @param n
+     *            the index of the prime, at least one
+     * @return the n-th prime
+     */
+    public long nthPrime(long n) {
+        if (n < 1) {
+            throw new IllegalArgumentException("There is no prime with index " + n);
+        }
+        if (n < SMALL_NTH) {
+            // p_n < n(ln n + ln ln n) for n >= 6
+            long bound = n < 6 ? 13 : (long) (n * (Math.log(n) + Math.log(Math.log(n)))) + 1;
+            return kthPrime(0, bound, n);
+        }
+        double estimate = inverseLi(n);
+        if (estimate > MAX_X) {
+            throw new IllegalArgumentException("The prime with index " + n + " is larger than " + MAX_X);
+        }
+        long x = (long) estimate;
+        long count = pi(x);
+        long window = Math.max(1 << 20, 4 * IntegerRoots.isqrt(x));
+        if (count >= n) {
+            // The prime is in (lo, hi] for a window ending at x
+            for (long hi = x;; hi -= window) {
+                long lo = Math.max(0, hi - window);
+                long inWindow = new SegmentedSieve(lo + 1, hi).count();
+                if (count - inWindow < n) {
+                    return kthPrime(lo + 1, hi, n - (count - inWindow));
+                }
+                count -= inWindow;
+            }
+        }
+        for (long lo = x + 1;; lo += window) {
+            long hi = Math.min(SegmentedSieve.MAX_BOUND, lo + window - 1);
+            long inWindow = new SegmentedSieve(lo, hi).count();
+            if (count + inWindow >= n) {
+                return kthPrime(lo, hi, n - count);
+            }
+            count += inWindow;
+        }
+    }
+
+    /**
+     * @return the k-th prime in [lo, hi], which must have at least k
+     */
+    private static long kthPrime(long lo, long hi, final long k) {
+        final long[] found = new long[2];
+        new SegmentedSieve(lo, hi).forEachPrime(p -> {
+            if (++found[0] == k) {
+                found[1] = p;
+            }
+        });
+        return found[1];
+    }
+
+    /**
+     * @return x with li(x) - li(&radic;x)/2 = n, by Newton's method
+     */
+    private static double inverseLi(long n) {
+        double x = n * Math.log(n);
+        for (int i = 0; i < 100; i++) {
+            double step = (li(x) - li(Math.sqrt(x)) / 2 - n) * Math.log(x);
+            x -= step;
+            if (Math.abs(step) < 1) {
+                break;
+            }
+        }
+        return x;
+    }
+
+    /**
+     * <p>
+     * The logarithmic integral, by Ramanujan's series
+     * </p>
+     *
+     * <p>
+     * li(x) = &gamma; + ln ln x + &radic;x &Sigma;<sub>n&gt;=1</sub>
+     * (-1)<sup>n-1</sup>(ln x)<sup>n</sup> / (n! 2<sup>n-1</sup>)
+     * &Sigma;<sub>k=0</sub><sup>(n-1)/2</sup> 1/(2k+1)
+     * </p>
+     *
+     * @param x
+     *            greater than one
+     * @return li(x)
+     */
+    private static double li(double x) {
+        double log = Math.log(x);
+        double sum = 0;
+        double term = -2; // (-1)^(n-1) (ln x)^n / (n! 2^(n-1)) for n = 0
+        double inner = 0;
+        for (int n = 1; n < 200; n++) {
+            term *= -log / (2 * n);
+            if ((n & 1) == 1) {
+                inner += 1.0 / n;
+            }
+            double last = sum;
+            sum += term * inner;
+            if (sum == last) {
+                break;
+            }
+        }
+        return GAMMA + Math.log(log) + Math.sqrt(x) * sum;
+    }
+
+    /**
+     * @return the multiple of x<sup>1/3</sup> used for y, it trades the
+     *         leaves against the length of the sieves
+     */
+    private static double alpha(long x) {
+        double log = Math.log10(x);
+        return Math.max(1, log * log / 40);
+    }
+
+    /**
+     * The tables and the three sums for one x.
+     */
+    private class Count {
+
+        /** The number whose primes are counted */
+        private final long x;
+
+        /** The bound on the leaves */
+        private final int y;
+
+        /** The primes up to y, primes[b] is the b-th prime and primes[0] is one */
+        private final int[] primes;
+
+        /** inverse[b] = 1.0 / primes[b], to divide by the primes with a multiplication */
+        private final double[] inverse;
+
+        /** pi[n] is the number of primes up to n, for n up to y */
+        private final int[] pi;
+
+        /** The least prime factor of each n up to y, lpf[1] is Integer.MAX_VALUE */
+        private final int[] lpf;
+
+        /** The Moebius function of each n up to y */
+        private final byte[] mu;
+
+        /** pi(y) */
+        private final int a;
+
+        /** The number of primes of the phi table */
+        private final int c;
+
+        /** The product of the first c primes */
+        private final int period;
+
+        /** The count of numbers in the period with none of the first c primes as a factor */
+        private final long totient;
+
+        /** phiTable[n] = phi(n, c) for n below the period */
+        private final int[] phiTable;
+
+        /**
+         * Bit n is set if none of the first c primes divides n, for a period
+         * and a segment more, so a segment can start already sieved by them
+         */
+        private final long[] presieved;
+
+        Count(long x) {
+            this.x = x;
+            long sqrt = IntegerRoots.isqrt(x);
+            long cbrt = IntegerRoots.iroot(x, 3);
+            y = (int) Math.min(sqrt, Math.max(cbrt, (long) (alpha(x) * cbrt)));
+
+            lpf = new int[y + 1];
+            mu = new byte[y + 1];
+            pi = new int[y + 1];
+            int count = 0;
+            for (int n = 2; n <= y; n++) {
+                mu[n] = 1;
+            }
+            mu[1] = 1;
+            for (int n = 2; n <= y; n++) {
+                if (lpf[n] == 0) {
+                    count++;
+                    for (int m = n; m <= y; m += n) {
+                        if (lpf[m] == 0) {
+                            lpf[m] = n;
+                        }
+                        mu[m] = (byte) -mu[m];
+                    }
+                    long square = (long) n * n;
+                    for (long m = square; m <= y; m += square) {
+                        mu[(int) m] = 0;
+                    }
+                }
+                pi[n] = count;
+            }
+            lpf[1] = Integer.MAX_VALUE;
+            a = count;
+            primes = new int[a + 1];
+            primes[0] = 1;
+            for (int n = 2, b = 1; n <= y; n++) {
+                if (lpf[n] == n) {
+                    primes[b++] = n;
+                }
+            }
+            inverse = new double[a + 1];
+            for (int b = 0; b <= a; b++) {
+                inverse[b] = 1.0 / primes[b];
+            }
+
+            c = Math.min(PHI_C, a);
+            int product = 1;
+            long phi = 1;
+            for (int b = 1; b <= c; b++) {
+                product *= primes[b];
+                phi *= primes[b] - 1;
+            }
+            period = product;
+            totient = phi;
+            phiTable = new int[period];
+            boolean[] coprime = new boolean[period];
+            int left = 0;
+            for (int n = 0; n < period; n++) {
+                coprime[n] = n > 0 && coprime(n);
+                if (coprime[n]) {
+                    left++;
+                }
+                phiTable[n] = left;
+            }
+            presieved = new long[(period + 63) / 64 + SEGMENT / 64 + 1];
+            for (int i = 0, n = 0; i < 64 * presieved.length; i++) {
+                if (coprime[n]) {
+                    presieved[i >>> 6] |= 1L << i;
+                }
+                if (++n == period) {
+                    n = 0;
+                }
+            }
+        }
+
+        /**
+         * @return true if none of the first c primes divides n
+         */
+        private boolean coprime(int n) {
+            for (int b = 1; b <= c; b++) {
+                if (n % primes[b] == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return phi(n, c), the numbers up to n with none of the first c
+         *         primes as a factor
+         */
+        private long phiC(long n) {
+            return (n / period) * totient + phiTable[(int) (n % period)];
+        }
+
+        long pi() {
+            return ordinaryLeaves() + specialLeaves() + a - 1 - p2();
+        }
+
+        /**
+         * @return the sum of mu(n) phi(x/n, c) over the square free n up to y
+         *         with no prime factor among the first c primes
+         */
+        private long ordinaryLeaves() {
+            long sum = 0;
+            int pc = primes[c];
+            for (int n = 1; n <= y; n++) {
+                if (mu[n] != 0 && lpf[n] > pc) {
+                    sum += mu[n] * phiC(x / n);
+                }
+            }
+            return sum;
+        }
+
+        /**
+         * @return the sum of the special leaves, sieving [1, x/y] in blocks
+         */
+        private long specialLeaves() {
+            long limit = x / y + 1;
+            long segments = (limit - 1 + SEGMENT - 1) / SEGMENT;
+            int blocks = (int) Math.min(segments, executor == null ? 1 : (long) BLOCKS_PER_THREAD * parallelism);
+            ArrayList<Callable<SpecialLeaves>> tasks = new ArrayList<Callable<SpecialLeaves>>(blocks);
+            for (int i = 0; i < blocks; i++) {
+                final long from = 1 + (segments * i / blocks) * SEGMENT;
+                final long to = Math.min(limit, 1 + (segments * (i + 1) / blocks) * SEGMENT);
+                tasks.add(new Callable<SpecialLeaves>() {
+                    public SpecialLeaves call() {
+                        return new SpecialLeaves(from, to);
+                    }
+                });
+            }
+
+            long sum = 0;
+            long[] phiBelow = new long[a + 1];
+            for (SpecialLeaves block : run(tasks)) {
+                sum += block.sum;
+                for (int b = c + 1; b <= a; b++) {
+                    sum += block.leaves[b] * phiBelow[b];
+                    phiBelow[b] += block.phi[b];
+                }
+            }
+            return sum;
+        }
+
+        /**
+         * @return P2(x, a), the sum of pi(x/p) - pi(p) + 1 over the primes y
+         *         &lt; p &lt;= sqrt(x)
+         */
+        private long p2() {
+            final long sqrt = IntegerRoots.isqrt(x);
+            if (sqrt <= y) {
+                return 0;
+            }
+            final long top = x / (y + 1);
+            final SegmentedSieve sieve = new SegmentedSieve(0, top);
+            final SegmentedSieve large = new SegmentedSieve(y + 1, sqrt);
+            int blocks = (int) Math.min(top / SEGMENT + 1, executor == null ? 1 : (long) BLOCKS_PER_THREAD * parallelism);
+            ArrayList<Callable<P2Block>> tasks = new ArrayList<Callable<P2Block>>(blocks);
+            for (int i = 0; i < blocks; i++) {
+                final long from = (top + 1) * i / blocks;
+                final long to = (top + 1) * (i + 1) / blocks - 1;
+                tasks.add(new Callable<P2Block>() {
+                    public P2Block call() {
+                        return new P2Block(sieve, large, from, to, sqrt);
+                    }
+                });
+            }
+
+            long sum = 0;
+            long below = 0;
+            long n = 0;
+            for (P2Block block : run(tasks)) {
+                sum += block.sum + block.quotients * below;
+                below += block.total;
+                n += block.quotients;
+            }
+            // The n primes above y are the (a+1)-th to the (a+n)-th
+            return sum - n * (2 * a + n - 1) / 2;
+        }
+
+        /**
+         * <p>
+         * The pi(x/p) for the primes p whose quotient x/p is in one block
+         * [from, to] of the sieve up to x/y, counting from the start of the
+         * block. The block is sieved upward a window at a time and the primes
+         * p of each window are found in it with a sieve of their own, so no
+         * more than one window of them is held at once.
+         * </p>
+         */
+        private class P2Block {
+
+            /** The sum of the counts, from the start of the block */
+            long sum;
+
+            /** The number of primes p whose quotient is in the block */
+            long quotients;
+
+            /** The number of primes in the block */
+            long total;
+
+            /** The primes p of the current window in increasing order */
+            private long[] found = new long[1024];
+
+            /** The number of primes p in the current window */
+            private int count;
+
+            P2Block(SegmentedSieve sieve, SegmentedSieve large, long from, long to, long sqrt) {
+                for (long low = from; low <= to; low += P2_WINDOW) {
+                    long high = Math.min(to, low + P2_WINDOW - 1);
+                    long pLow = Math.max(y + 1, x / (high + 1) + 1);
+                    long pHigh = low == 0 ? sqrt : Math.min(sqrt, x / low);
+                    count = 0;
+                    if (pLow <= pHigh) {
+                        large.sieve(pLow, pHigh, p -> add(p));
+                    }
+
+                    // Decreasing p gives the quotients in increasing order
+                    long[] points = new long[count];
+                    for (int i = 0; i < count; i++) {
+                        points[i] = x / found[count - 1 - i];
+                    }
+                    long[] counts = new long[count];
+                    long window = sieve.countAt(low, high, points, counts);
+                    for (int i = 0; i < count; i++) {
+                        sum += total + counts[i];
+                    }
+                    quotients += count;
+                    total += window;
+                }
+            }
+
+            /**
+             * Collects a prime p of the current window.
+             */
+            private void add(long p) {
+                if (count == found.length) {
+                    found = Arrays.copyOf(found, 2 * count);
+                }
+                found[count++] = p;
+            }
+        }
+
+        /**
+         * <p>
+         * The special leaves whose argument is in one block [from, to) of the
+         * sieve. The sum takes phi(n, b-1) as the count of what is left in
+         * [from, n] only, so the leaves found for each b are counted as well
+         * and the caller adds the phi of everything below the block for them.
+         * </p>
+         */
+        private class SpecialLeaves {
+
+            /** The sum of the leaves, counting from the start of the block */
+            long sum;
+
+            /** leaves[b] is the sum of -mu(m) over the leaves of the b-th prime */
+            final long[] leaves = new long[a + 1];
+
+            /** phi[b] is the count left in the block by the first b-1 primes */
+            final long[] phi = new long[a + 1];
+
+            /** The next multiple of each prime to cross off */
+            private final long[] next = new long[a + 1];
+
+            /** The sieve of one segment, a set bit is a number not yet crossed off */
+            private final long[] bits = new long[SEGMENT / 64];
+
+            /** The number of set bits in each run of CHUNK_WORDS words */
+            private final int[] counters = new int[SEGMENT / 64 / CHUNK_WORDS];
+
+            /** The number of set bits in the segment */
+            private int remaining;
+
+            /** The words of the segment counted so far by {@link #count(int)} */
+            private int word;
+
+            /** The number of set bits in those words */
+            private long left;
+
+            SpecialLeaves(long from, long to) {
+                for (int b = c + 1; b <= a; b++) {
+                    long p = primes[b];
+                    next[b] = (from + p - 1) / p * p;
+                }
+                for (long low = from; low < to; low += SEGMENT) {
+                    segment(low, Math.min(low + SEGMENT, to));
+                }
+            }
+
+            /**
+             * Sieves [low, high) and answers the leaves in it.
+             */
+            private void segment(long low, long high) {
+                int length = (int) (high - low);
+                int words = (length + 63) >>> 6;
+                int offset = (int) (low % period);
+                int first = offset >>> 6;
+                int shift = offset & 63;
+                for (int w = 0; w < words; w++) {
+                    long pattern = presieved[first + w] >>> shift;
+                    bits[w] = shift == 0 ? pattern : pattern | presieved[first + w + 1] << (64 - shift);
+                }
+                Arrays.fill(bits, words, bits.length, 0L);
+                if ((length & 63) != 0) {
+                    bits[words - 1] &= (1L << length) - 1;
+                }
+                remaining = 0;
+                for (int k = 0; k < counters.length; k++) {
+                    int n = 0;
+                    for (int w = k << CHUNK_SHIFT; w < (k + 1) << CHUNK_SHIFT; w++) {
+                        n += Long.bitCount(bits[w]);
+                    }
+                    counters[k] = n;
+                    remaining += n;
+                }
+
+                for (int b = c + 1; b <= a; b++) {
+                    long p = primes[b];
+                    long maxM = Math.min(x / (p * low), y);
+                    if (p >= maxM) {
+                        // maxM only falls as b and low grow, so no later prime has leaves here
+                        break;
+                    }
+                    long minM = Math.max(x / (p * high), y / p);
+                    word = 0;
+                    left = 0;
+                    if (p * p > y) {
+                        primeLeaves(b, Math.max(minM, p), maxM, low);
+                    } else {
+                        squareFreeLeaves(b, minM, maxM, low);
+                    }
+                    phi[b] += remaining;
+                    remaining -= crossOff(b, low, high);
+                }
+            }
+
+            /**
+             * The leaves x/(p<sub>b</sub>q) of the primes lowM &lt; q &lt;=
+             * maxM. Any m &gt; p<sub>b</sub> up to y &lt;
+             * p<sub>b</sub><sup>2</sup> with no factor up to p<sub>b</sub>
+             * is prime, so these are all of the leaves of a large
+             * p<sub>b</sub> and mu(m) is -1 for each.
+             */
+            private void primeLeaves(int b, long lowM, long maxM, long low) {
+                long xp = x / primes[b];
+                double xpd = xp;
+                long total = 0;
+                int k = pi[(int) maxM];
+                int count = 0;
+                for (; primes[k] > lowM; k--) {
+                    // floor(xp / q) from the double quotient, which is off by at most one
+                    long q = primes[k];
+                    long v = (long) (xpd * inverse[k]);
+                    if (v * q > xp) {
+                        v--;
+                    } else if ((v + 1) * q <= xp) {
+                        v++;
+                    }
+                    total += count((int) (v - low));
+                    count++;
+                }
+                sum += total + count * phi[b];
+                leaves[b] += count;
+            }
+
+            /**
+             * The leaves x/(p<sub>b</sub>m) of the square free minM &lt; m
+             * &lt;= maxM with no prime factor up to p<sub>b</sub>.
+             */
+            private void squareFreeLeaves(int b, long minM, long maxM, long low) {
+                long p = primes[b];
+                for (long m = maxM; m > minM; m--) {
+                    int mu = Count.this.mu[(int) m];
+                    if (mu == 0 || lpf[(int) m] <= p) {
+                        continue;
+                    }
+                    sum -= mu * (phi[b] + count((int) (x / (p * m) - low)));
+                    leaves[b] -= mu;
+                }
+            }
+
+            /**
+             * Counts the set bits of the segment up to and including bit i,
+             * going on from the last count, so i must not fall between calls
+             * made for the same prime.
+             */
+            private long count(int i) {
+                int last = i >>> 6;
+                while (word < last) {
+                    if ((word & (CHUNK_WORDS - 1)) == 0 && word + CHUNK_WORDS <= last) {
+                        left += counters[word >>> CHUNK_SHIFT];
+                        word += CHUNK_WORDS;
+                    } else {
+                        left += Long.bitCount(bits[word++]);
+                    }
+                }
+                return left + Long.bitCount(bits[last] & (-1L >>> (63 - (i & 63))));
+            }
+
+            /**
+             * Crosses off the multiples of the b-th prime in [low, high).
+             *
+             * @return the number of them that were still set
+             */
+            private int crossOff(int b, long low, long high) {
+                int p = primes[b];
+                int crossed = 0;
+                long j = next[b];
+                for (; j < high; j += p) {
+                    // Without a branch, as the bit is set about half of the time
+                    int i = (int) (j - low);
+                    long w = bits[i >>> 6];
+                    int set = (int) (w >>> i) & 1;
+                    bits[i >>> 6] = w & ~(1L << i);
+                    counters[i >>> (6 + CHUNK_SHIFT)] -= set;
+                    crossed += set;
+                }
+                next[b] = j;
+                return crossed;
+            }
+        }
+    }
+
+    /**
+     * Runs the tasks on the executor, or in turn on the calling thread when
+     * there is none.
+     *
+     * @return the answers in the order of the tasks
+     */
+    private <T> List<T> run(List<Callable<T>> tasks) {
+        ArrayList<T> rval = new ArrayList<T>(tasks.size());
+        if (executor == null) {
+            try {
+                for (Callable<T> task : tasks) {
+                    rval.add(task.call());
+                }
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException("A count failed", e);
+            }
+            return rval;
+        }
+        ArrayList<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+        try {
+            for (Callable<T> task : tasks) {
+                futures.add(executor.submit(task));
+            }
+            for (Future<T> future : futures) {
+                rval.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while counting primes", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("A count failed", e.getCause());
+        } finally {
+            for (Future<T> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return rval;
+    }
+}
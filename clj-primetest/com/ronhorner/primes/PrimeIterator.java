@@ -0,0 +1,83 @@
+package com.ronhorner.primes;
+
+import java.util.function.LongConsumer;
+
+/**
+ * <p>
+ * Hands out the primes of an interval one at a time, in increasing order.
+ * </p>
+ *
+ * <p>
+ * The interval is sieved a window at a time by one {@link SegmentedSieve},
+ * so the sieving primes are found once and only the primes of the current
+ * window are held in memory. This suits a loop that needs the next prime
+ * between other work, like building the exponent of a factoring stage, where
+ * {@link SegmentedSieve#forEachPrime(LongConsumer)} would turn the loop
+ * inside out.
+ * </p>
+ *
+ * @author Ron Horner
+ */
+public class PrimeIterator {
+
+    /** The number of integers sieved at once */
+    private static final long WINDOW = 1 << 20;
+
+    /** The sieve over the whole interval */
+    private final SegmentedSieve sieve;
+
+    /** The first number of the next window */
+    private long next;
+
+    /** The primes of the current window */
+    private long[] primes = new long[1024];
+
+    /** The number of primes in the current window */
+    private int count;
+
+    /** The index of the next prime to hand out */
+    private int index;
+
+    /**
+     * Creates an iterator over the primes in [lo, hi].
+     *
+     * @param lo
+     *            the lower bound of the interval
+     * @param hi
+     *            the upper bound of the interval, at most
+     *            {@link SegmentedSieve#MAX_BOUND}
+     */
+    public PrimeIterator(long lo, long hi) {
+        this.sieve = new SegmentedSieve(lo, hi);
+        this.next = lo;
+    }
+
+    /**
+     * @return the next prime of the interval, or -1 after the last one
+     */
+    public long nextPrime() {
+        while (index == count) {
+            if (next > sieve.getHigh()) {
+                return -1;
+            }
+            long to = Math.min(sieve.getHigh(), next + WINDOW - 1);
+            count = 0;
+            index = 0;
+            sieve.sieve(next, to, p -> add(p));
+            next = to + 1;
+        }
+        return primes[index++];
+    }
+
+    /**
+     * Collects a prime of the window being sieved.
+     */
+    private void add(long p) {
+        if (count == primes.length) {
+            long[] grown = new long[2 * count];
+            System.arraycopy(primes, 0, grown, 0, count);
+            primes = grown;
+        }
+        primes[count++] = p;
+    }
+}
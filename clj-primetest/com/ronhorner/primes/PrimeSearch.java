@@ -0,0 +1,396 @@
+package com.ronhorner.primes;
+
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * <p>
+ * Finds the closest prime below or above a bound by sieving a window of
+ * candidates before running the real test on any of them.
+ * </p>
+ *
+ * <p>
+ * The remainders of the first odd candidate by the first few thousand primes
+ * are found once. They give the position of every multiple of those primes
+ * in the window directly, so the window is sieved with no big number
+ * arithmetic, and when the window has to move the remainders are moved with
+ * it by adding or subtracting the window length. Only the candidates left standing are
+ * given to the {@link PrimalityTest}, in order from the bound outwards. A
+ * window twice as long is used each time a window holds no prime.
+ * </p>
+ *
+ * <p>
+ * With the default 4096 primes about 89% of the odd candidates are removed by
+ * the sieve, so for a large bound there are roughly nine times fewer
+ * expensive tests than when every odd number is tried.
+ * </p>
+ *
+ * <p>
+ * Given an executor the survivors are tested speculatively, several at once
+ * in order from the bound outwards. The answer is the first candidate in that
+ * order found prime, so it is the same as the one found by a single thread;
+ * once it is confirmed the tests of the candidates after it are cancelled.
+ * A test that has already started runs on to the end, but the search returns
+ * without waiting for it, so the time taken is close to that of a single
+ * test when a window holds primes.
+ * </p>
+ *
+ * <p>
+ * A search keeps counters and is not safe to share between threads.
+ * </p>
+ *
+ * @author Ron Horner
+ */
+public class PrimeSearch {
+
+    /** The default number of primes the windows are sieved with */
+    public static final int DEFAULT_SIEVE_PRIMES = 4096;
+
+    /** The largest number of odd candidates in one window */
+    public static final int MAX_WINDOW = 1 << 22;
+
+    /** The smallest number of odd candidates in one window */
+    private static final int MIN_WINDOW = 256;
+
+    private static final BigInteger TWO = BigInteger.valueOf(2);
+
+    /** The test run on the candidates left by the sieve */
+    private final PrimalityTest test;
+
+    /** The odd sieving primes */
+    private final int[] primes;
+
+    /** The product of each group of primes, each fits in a long */
+    private final BigInteger[] groupProducts;
+
+    /** The index in primes where each group starts, with an extra entry for the end */
+    private final int[] groupStarts;
+
+    /** Runs the speculative tests, or null to test one candidate at a time */
+    private final ExecutorService executor;
+
+    /** The most tests in flight at once */
+    private final int parallelism;
+
+    /** The number of candidates in the windows sieved */
+    private long sieved;
+
+    /** The number of candidates given to the test */
+    private long tested;
+
+    /**
+     * Creates a search that sieves with {@link #DEFAULT_SIEVE_PRIMES} primes.
+     *
+     * @param test
+     *            the test run on the candidates left by the sieve
+     */
+    public PrimeSearch(PrimalityTest test) {
+        this(test, DEFAULT_SIEVE_PRIMES);
+    }
+
+    /**
+     * Creates a search.
+     *
+     * @param test
+     *            the test run on the candidates left by the sieve
+     * @param sievePrimes
+     *            the number of primes to sieve with, at least two
+     */
+    public PrimeSearch(PrimalityTest test, int sievePrimes) {
+        this(test, sievePrimes, null, 1);
+    }
+
+    /**
+     * Creates a search that tests several candidates at once.
+     *
+     * @param test
+     *            the test run on the candidates left by the sieve
+     * @param sievePrimes
+     *            the number of primes to sieve with, at least two
+     * @param executor
+     *            runs the tests, it is not shut down by this class, or null to
+     *            test one candidate at a time
+     * @param parallelism
+     *            the most tests in flight at once, the number of threads the
+     *            executor has
+     */
+    public PrimeSearch(PrimalityTest test, int sievePrimes, ExecutorService executor, int parallelism) {
+        if (sievePrimes < 2) {
+            throw new IllegalArgumentException("The search needs at least two sieving primes, not " + sievePrimes);
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Invalid parallelism " + parallelism);
+        }
+        this.test = test;
+        this.executor = executor;
+        this.parallelism = parallelism;
+        int[] first = SmallPrimeFilter.firstPrimes(sievePrimes);
+        primes = new int[sievePrimes - 1];
+        System.arraycopy(first, 1, primes, 0, primes.length);
+
+        int[] starts = new int[primes.length + 1];
+        int groups = 0;
+        long product = 1;
+        for (int i = 0; i < primes.length; i++) {
+            if (i == 0 || product > Long.MAX_VALUE / primes[i]) {
+                starts[groups++] = i;
+                product = 1;
+            }
+            product *= primes[i];
+        }
+        starts[groups] = primes.length;
+        groupStarts = new int[groups + 1];
+        System.arraycopy(starts, 0, groupStarts, 0, groups + 1);
+        groupProducts = new BigInteger[groups];
+        for (int g = 0; g < groups; g++) {
+            product = 1;
+            for (int i = groupStarts[g]; i < groupStarts[g + 1]; i++) {
+                product *= primes[i];
+            }
+            groupProducts[g] = BigInteger.valueOf(product);
+        }
+    }
+
+    /**
+     * <p>
+     * Finds the largest prime less than or equal to <i>bound</i>.
+     * </p>
+     *
+     * @param bound
+     *            the upper bound
+     * @return the largest prime at or below bound, or null if bound is less
+     *         than two
+     */
+    public BigInteger previous(BigInteger bound) {
+        if (bound.compareTo(TWO) < 0) {
+            return null;
+        }
+        if (bound.equals(TWO)) {
+            return TWO;
+        }
+        BigInteger top = bound.testBit(0) ? bound : bound.subtract(BigInteger.ONE);
+        BigInteger rval = search(top, false);
+        return rval == null ? TWO : rval;
+    }
+
+    /**
+     * <p>
+     * Finds the smallest prime greater than or equal to <i>bound</i>.
+     * </p>
+     *
+     * @param bound
+     *            the lower bound
+     * @return the smallest prime at or above bound
+     */
+    public BigInteger next(BigInteger bound) {
+        if (bound.compareTo(TWO) <= 0) {
+            return TWO;
+        }
+        return search(bound.testBit(0) ? bound : bound.add(BigInteger.ONE), true);
+    }
+
+    /**
+     * <p>
+     * Sieves and tests windows of odd candidates moving away from
+     * <i>start</i>, candidate i being start + 2i going up or start - 2i going
+     * down.
+     * </p>
+     *
+     * @param start
+     *            the first odd candidate, at least three
+     * @param up
+     *            true to search upwards
+     * @return the first prime found, or null if a downward search passes three
+     */
+    private BigInteger search(BigInteger start, boolean up) {
+        int[] residues = residues(start);
+        int window = initialWindow(start.bitLength());
+        long[] composite = new long[window / 64];
+
+        while (true) {
+            int length = window;
+            long low = Long.MAX_VALUE;
+            if (start.bitLength() < 32) {
+                if (!up) {
+                    length = (int) Math.min(window, (start.longValue() - 1) / 2);
+                }
+                low = up ? start.longValue() : start.longValue() - 2L * (length - 1);
+            }
+            sieve(residues, composite, length, low, up);
+            sieved += length;
+
+            int found = executor == null || parallelism == 1 ? testInOrder(start, up, composite, length)
+                    : testSpeculatively(start, up, composite, length);
+            if (found >= 0) {
+                return candidate(start, up, found);
+            }
+            if (length < window) {
+                return null;
+            }
+
+            start = candidate(start, up, length);
+            long step = up ? 2L * length : -2L * length;
+            for (int j = 0; j < primes.length; j++) {
+                int p = primes[j];
+                int r = (int) ((residues[j] + step) % p);
+                residues[j] = r < 0 ? r + p : r;
+            }
+            window = Math.min(MAX_WINDOW, window * 2);
+            if (composite.length < window / 64) {
+                composite = new long[window / 64];
+            }
+        }
+    }
+
+    /**
+     * @return candidate i of the window starting at start
+     */
+    private static BigInteger candidate(BigInteger start, boolean up, int i) {
+        BigInteger offset = BigInteger.valueOf(2L * i);
+        return up ? start.add(offset) : start.subtract(offset);
+    }
+
+    /**
+     * Tests the candidates left in a window one at a time.
+     *
+     * @return the index of the first prime candidate, or -1 if there is none
+     */
+    private int testInOrder(BigInteger start, boolean up, long[] composite, int length) {
+        for (int i = nextSurvivor(composite, 0, length); i < length; i = nextSurvivor(composite, i + 1, length)) {
+            tested++;
+            if (test.isPrime(candidate(start, up, i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * <p>
+     * Tests the candidates left in a window on the executor, keeping up to
+     * <i>parallelism</i> of them in flight. The answers are taken in
+     * candidate order, so a prime found further along only counts once every
+     * candidate before it has been shown composite.
+     * </p>
+     *
+     * @return the index of the first prime candidate, or -1 if there is none
+     */
+    private int testSpeculatively(BigInteger start, boolean up, long[] composite, int length) {
+        ArrayDeque<Future<Boolean>> pending = new ArrayDeque<Future<Boolean>>();
+        ArrayDeque<Integer> indexes = new ArrayDeque<Integer>();
+        int next = nextSurvivor(composite, 0, length);
+        try {
+            while (true) {
+                while (pending.size() < parallelism && next < length) {
+                    final BigInteger c = candidate(start, up, next);
+                    pending.add(executor.submit(new Callable<Boolean>() {
+                        public Boolean call() {
+                            return test.isPrime(c);
+                        }
+                    }));
+                    indexes.add(next);
+                    tested++;
+                    next = nextSurvivor(composite, next + 1, length);
+                }
+                if (pending.isEmpty()) {
+                    return -1;
+                }
+                int i = indexes.poll();
+                if (pending.poll().get()) {
+                    return i;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while searching", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("A candidate test failed", e.getCause());
+        } finally {
+            for (Future<Boolean> task : pending) {
+                task.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * @return the index of the first unmarked candidate at or after from, or
+     *         length if there is none
+     */
+    private static int nextSurvivor(long[] composite, int from, int length) {
+        while (from < length && (composite[from >>> 6] & (1L << from)) != 0) {
+            from++;
+        }
+        return from;
+    }
+
+    /**
+     * Marks the candidates start &plusmn; 2i, 0 &lt;= i &lt; length, that have
+     * a sieving prime as a factor.
+     *
+     * @param residues
+     *            start mod each sieving prime
+     * @param composite
+     *            set bit i marks candidate i
+     * @param length
+     *            the number of candidates
+     * @param low
+     *            the smallest candidate, only primes below it are used so a
+     *            sieving prime never marks itself
+     * @param up
+     *            true if the candidates go up from start
+     */
+    private void sieve(int[] residues, long[] composite, int length, long low, boolean up) {
+        Arrays.fill(composite, 0, (length + 63) >>> 6, 0L);
+        for (int j = 0; j < primes.length && primes[j] < low; j++) {
+            int p = primes[j];
+            // start - 2i = 0 (mod p) when i = r / 2 (mod p), start + 2i when i = -r / 2
+            int r = up && residues[j] != 0 ? p - residues[j] : residues[j];
+            long i = (r & 1) == 0 ? r >>> 1 : (r + p) >>> 1;
+            for (; i < length; i += p) {
+                composite[(int) (i >>> 6)] |= 1L << i;
+            }
+        }
+    }
+
+    /**
+     * @return n mod each sieving prime, one big remainder per group
+     */
+    private int[] residues(BigInteger n) {
+        int[] rval = new int[primes.length];
+        for (int g = 0; g < groupProducts.length; g++) {
+            long residue = n.mod(groupProducts[g]).longValue();
+            for (int i = groupStarts[g]; i < groupStarts[g + 1]; i++) {
+                rval[i] = (int) (residue % primes[i]);
+            }
+        }
+        return rval;
+    }
+
+    /**
+     * @return a first window about twice the expected gap between primes of
+     *         this size
+     */
+    private static int initialWindow(int bits) {
+        int window = Math.max(MIN_WINDOW, bits);
+        return Math.min(MAX_WINDOW, (window + 63) & ~63);
+    }
+
+    /**
+     * @return the number of candidates in the windows sieved so far
+     */
+    public long getSieved() {
+        return sieved;
+    }
+
+    /**
+     * @return the number of candidates given to the test so far
+     */
+    public long getTested() {
+        return tested;
+    }
+}
@@ -0,0 +1,187 @@
+package com.ronhorner.primes;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Tests a stream of numbers, one per line, on a pool of worker threads and
+ * writes one answer line per input line in the same order.
+ * </p>
+ *
+ * <p>
+ * The reading thread parses nothing itself, it hands each line to the pool
+ * and puts the pending answer on a bounded queue. A single writer thread
+ * takes answers off the head of the queue, waits for each in turn and writes
+ * it. When the workers or the writer fall behind the queue fills and the
+ * reader blocks, so no more than <i>capacity</i> lines are ever in memory
+ * however long the input is.
+ * </p>
+ *
+ * <p>
+ * Each answer line is the number, a tab and then <code>prime</code>,
+ * <code>composite</code> or <code>invalid</code> when the line is not a
+ * number. Blank lines are skipped.
+ * </p>
+ *
+ * @author Ron Horner
+ */
+public class PrimeStream {
+
+    /** The default number of lines allowed between the reader and the writer */
+    public static final int DEFAULT_CAPACITY = 1 << 14;
+
+    /** Marks the end of the input on the queue */
+    private static final Future<String> END = new CompletableFuture<String>();
+
+    /** The test run on every number */
+    private final PrimalityTest test;
+
+    /** The number of worker threads */
+    private final int threads;
+
+    /** The most lines in flight at once */
+    private final int capacity;
+
+    /**
+     * Creates a stream tester.
+     *
+     * @param test
+     *            the test to run on every number
+     * @param threads
+     *            the number of worker threads
+     * @param capacity
+     *            the most lines in flight at once
+     */
+    public PrimeStream(PrimalityTest test, int threads, int capacity) {
+        if (threads < 1 || capacity < 1) {
+            throw new IllegalArgumentException("Invalid thread count " + threads + " or capacity " + capacity);
+        }
+        this.test = test;
+        this.threads = threads;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Tests every line of <i>in</i> and writes the answers to <i>out</i>.
+     * Neither is closed, <i>out</i> is flushed at the end.
+     *
+     * @param in
+     *            the numbers, one per line
+     * @param out
+     *            receives one answer line per number
+     * @return the number of lines tested
+     * @throws IOException
+     *             if reading or writing fails
+     */
+    public long process(BufferedReader in, final Writer out) throws IOException {
+        final BlockingQueue<Future<String>> pending = new ArrayBlockingQueue<Future<String>>(capacity);
+        final IOException[] writeError = new IOException[1];
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        Thread writer = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    while (true) {
+                        Future<String> next = pending.take();
+                        if (next == END) {
+                            break;
+                        }
+                        out.write(next.get());
+                        out.write('\n');
+                    }
+                    out.flush();
+                } catch (IOException e) {
+                    writeError[0] = e;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    writeError[0] = new IOException("A test failed", e.getCause());
+                }
+            }
+        }, "PrimeStream writer");
+        writer.setDaemon(true);
+        writer.start();
+
+        long count = 0;
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                final String number = line.trim();
+                if (number.length() == 0) {
+                    continue;
+                }
+                Future<String> answer = pool.submit(new Callable<String>() {
+                    public String call() {
+                        BigInteger n;
+                        try {
+                            n = new BigInteger(number);
+                        } catch (NumberFormatException e) {
+                            return number + "\tinvalid";
+                        }
+                        return number + (test.isPrime(n) ? "\tprime" : "\tcomposite");
+                    }
+                });
+                if (!put(pending, answer, writer)) {
+                    break;
+                }
+                count++;
+            }
+            put(pending, END, writer);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            writer.interrupt();
+            throw new IOException("Interrupted while streaming", e);
+        } finally {
+            pool.shutdownNow();
+            stop(writer);
+        }
+        if (writeError[0] != null) {
+            throw writeError[0];
+        }
+        return count;
+    }
+
+    /**
+     * Stops the writer if it is still waiting for answers, which only happens
+     * when reading the input failed before END was queued.
+     */
+    private static void stop(Thread writer) {
+        if (!writer.isAlive()) {
+            return;
+        }
+        writer.interrupt();
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Puts an answer on the queue, waiting while it is full unless the writer
+     * has stopped.
+     *
+     * @return false if the writer stopped before there was room
+     */
+    private static boolean put(BlockingQueue<Future<String>> pending, Future<String> answer, Thread writer)
+            throws InterruptedException {
+        while (!pending.offer(answer, 100, TimeUnit.MILLISECONDS)) {
+            if (!writer.isAlive()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
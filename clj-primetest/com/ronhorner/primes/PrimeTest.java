@@ -1,9 +1,23 @@
 package com.ronhorner.primes;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
 import java.math.BigInteger;
+import java.nio.file.Paths;
 import java.security.SecureRandom;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Ron Horner <br>
@@ -45,6 +59,11 @@ import java.util.Random;
  * <i>witnesses</i> is the number of witnesses for the Solovay-Strassen Test</dd>
  * </dl><br>
  * 
+ * <dl><dt><b>Baillie-PSW Method</b></dt>
+ * <dt>java -jar PrimeTest.jar -bpsw -n <i>number</i></dt>
+ * <dd>Where <i>number</i> is the number to check for primality</dd>
+ * </dl><br>
+ * 
  * <p>
  * <b>Problem 2</b>
  * </p>
@@ -58,11 +77,64 @@ import java.util.Random;
  * or below in the help documentation.</i></dt>
  * </dl><br>
  *
+ * <dl><dt><b>Closest prime greater than or equal to <i>number</i></b></dt>
+ * <dt>java -jar PrimeTest.jar -bpsw -next -n <i>number</i></dt>
+ * <dt>java -jar PrimeTest.jar -bpsw -gap -n <i>number</i></dt>
+ * <dd>-gap prints the primes on both sides of <i>number</i> and the gap between them.</dd>
+ * </dl><br>
+ *
+ * <dl><dt><b>Random primes</b></dt>
+ * <dt>java -jar PrimeTest.jar -bpsw -pb 1024 -k 100 -t <i>threads</i></dt>
+ * <dd>Generates 100 random 1024 bit probable primes on <i>threads</i> cores.</dd>
+ * <dt>java -jar PrimeTest.jar -bpsw -safe -pb 512</dt>
+ * <dd>Generates a random 512 bit safe prime.</dd>
+ * </dl><br>
+ *
+ * <dl><dt><b>Every prime in an interval</b></dt>
+ * <dt>java -jar PrimeTest.jar -range <i>low</i> <i>high</i></dt>
+ * <dd>Where every prime between <i>low</i> and <i>high</i> inclusive is printed
+ * one per line using a segmented Sieve of Eratosthenes.</dd>
+ * <dt>java -jar PrimeTest.jar -range <i>low</i> <i>high</i> -c -t <i>threads</i></dt>
+ * <dd>Only counts the primes, sieving on <i>threads</i> cores.</dd>
+ * </dl><br>
+ *
+ * <dl><dt><b>Counting the primes up to <i>x</i></b></dt>
+ * <dt>java -jar PrimeTest.jar -count <i>x</i> -t <i>threads</i></dt>
+ * <dd>Prints &pi;(<i>x</i>) found with the Meissel-Lehmer method of
+ * {@link PrimeCounter}, without listing the primes. 10<sup>14</sup> takes a
+ * few seconds on one core.</dd>
+ * <dt>java -jar PrimeTest.jar -nth <i>n</i></dt>
+ * <dd>Prints the <i>n</i>-th prime, found by counting the primes up to an
+ * estimate of it and sieving the rest of the way.</dd>
+ * </dl><br>
+ *
+ * <dl><dt><b>Factoring a composite</b></dt>
+ * <dt>java -jar PrimeTest.jar -bpsw -fac -n <i>number</i></dt>
+ * <dd>Tests <i>number</i> and, if it is not prime, prints its prime factors
+ * found with Pollard's rho method, the p-1 and p+1 methods and then elliptic
+ * curves on the threads given by -t. Factors of up to about 25 digits come
+ * out in seconds.</dd>
+ * <dt>java -jar PrimeTest.jar -bpsw -fac -b1 <i>bound1</i> -b2 <i>bound2</i> -n <i>number</i></dt>
+ * <dd>Runs the p-1 and p+1 passes with stage 1 up to <i>bound1</i> and
+ * stage 2 up to <i>bound2</i>.</dd>
+ * </dl><br>
+ *
+ * <dl><dt><b>Many numbers from a file</b></dt>
+ * <dt>java -jar PrimeTest.jar -bpsw -in <i>file</i></dt>
+ * <dd>Tests every number in <i>file</i>, one per line, with any of the methods
+ * and prints <i>number</i>, a tab and <code>prime</code> or <code>composite</code>
+ * for each in the same order. Use - as the file to read standard input.</dd>
+ * <dt>java -jar PrimeTest.jar -bpsw -in <i>file</i> -out <i>primes</i></dt>
+ * <dd>Writes the primes found in <i>file</i> to <i>primes</i> as a binary
+ * {@link NumberFile}. <i>file</i> may itself be a number file, which is read
+ * through memory mapped buffers instead of being parsed as text.</dd>
+ * </dl><br>
+ *
  * <p><b>Help documentation</b></p>
  * PrimeTest is a small application to test for the primality of a number or the
  * closest prime to an upper bound. <br>
  * <br>
- * Usage PrimeTest &lt;method&gt; [-f] &lt;number type&gt; &lt;number&gt; [-w
+ * Usage PrimeTest &lt;method&gt; [-f | -next | -gap] &lt;number type&gt; &lt;number&gt; [-w
  * &lt;number&gt;]<br>
  * <br>
  * <dl>
@@ -100,6 +172,13 @@ import java.util.Random;
  * See below for information.</dd>
  * </dl>
  * </dd>
+ * <dd> -bpsw </dd>
+ * <dd>
+ * <dl>
+ * <dd>Baillie-PSW primality test. A strong test to base 2 followed by a
+ * strong Lucas test. Does not use witnesses.</dd>
+ * </dl>
+ * </dd>
  * <dd> -h </dd>
  * <dd>
  * <dl>
@@ -123,6 +202,101 @@ import java.util.Random;
  * </dl>
  * </dd>
  * 
+ * <dd>-range <i>low</i> <i>high</i></dd>
+ * <dd>
+ * <dl>
+ * <dd>Print every prime from <i>low</i> to <i>high</i> with a segmented sieve.
+ * No method is needed.</dd>
+ * </dl>
+ * </dd>
+ * 
+ * <dd>-count <i>x</i></dd>
+ * <dd>
+ * <dl>
+ * <dd>Count the primes up to <i>x</i> with the Meissel-Lehmer method.
+ * No method is needed.</dd>
+ * </dl>
+ * </dd>
+ * 
+ * <dd>-nth <i>n</i></dd>
+ * <dd>
+ * <dl>
+ * <dd>Find the <i>n</i>-th prime, -nth 1 is 2. No method is needed.</dd>
+ * </dl>
+ * </dd>
+ * 
+ * <dd>-t <i>number</i></dd>
+ * <dd>
+ * <dl>
+ * <dd>Use <i>number</i> threads for -range, -count, -nth, -fac, -b, -f and -in. Defaults to
+ * the number of processors.</dd>
+ * </dl>
+ * </dd>
+ * 
+ * <dd>-pf <i>number</i></dd>
+ * <dd>
+ * <dl>
+ * <dd>Divide by the first <i>number</i> primes before running any test.
+ * Use 0 to turn the prefilter off. Defaults to 64.</dd>
+ * </dl>
+ * </dd>
+ * 
+ * <dd>-pb <i>bits</i></dd>
+ * <dd>
+ * <dl>
+ * <dd>Generate a random probable prime of exactly <i>bits</i> bits with the
+ * chosen method.</dd>
+ * </dl>
+ * </dd>
+ * 
+ * <dd>-pd <i>digits</i></dd>
+ * <dd>
+ * <dl>
+ * <dd>Generate a random probable prime of exactly <i>digits</i> decimal
+ * digits.</dd>
+ * </dl>
+ * </dd>
+ * 
+ * <dd>-k <i>count</i></dd>
+ * <dd>
+ * <dl>
+ * <dd>With -pb or -pd, generate <i>count</i> primes, one per thread at a
+ * time. The primes are close to uniform but a prime that follows a long gap
+ * is a little more likely, see {@link RandomPrimeGenerator}.</dd>
+ * </dl>
+ * </dd>
+ * 
+ * <dd>-safe</dd>
+ * <dd>
+ * <dl>
+ * <dd>Generate a random safe prime q of -pb bits, one for which (q-1)/2 is
+ * also prime, with a {@link CunninghamChainGenerator}.</dd>
+ * </dl>
+ * </dd>
+ * 
+ * <dd>-chain <i>length</i></dd>
+ * <dd>
+ * <dl>
+ * <dd>Generate a random Cunningham chain of the first kind of
+ * <i>length</i> primes whose first prime has -pb bits.</dd>
+ * </dl>
+ * </dd>
+ * 
+ * <dd>-in <i>file</i></dd>
+ * <dd>
+ * <dl>
+ * <dd>Test every number in <i>file</i>, one per line, or standard input when
+ * <i>file</i> is -. A binary number file is recognized and read as one.</dd>
+ * </dl>
+ * </dd>
+ * 
+ * <dd>-out <i>file</i></dd>
+ * <dd>
+ * <dl>
+ * <dd>With -in, write the primes found to <i>file</i> as a binary number file.</dd>
+ * </dl>
+ * </dd>
+ * 
  * <dt>Witnesses Option</dt>
  * <dd>-w <i>number</i></dd>
  * <dd>
@@ -144,7 +318,56 @@ import java.util.Random;
  * <dd>
  * <dl>
  * <dd>Find the closest prime less than or equal to the specified or generated
- * number.</dd>
+ * number. The candidates are sieved by small primes with a {@link PrimeSearch}
+ * and only the survivors are tested, several at once on the threads given by
+ * -t.</dd>
+ * </dl>
+ * </dd>
+ * 
+ * <dd>-next</dd>
+ * <dd>
+ * <dl>
+ * <dd>Find the closest prime greater than or equal to the specified or
+ * generated number, in the same way as -f.</dd>
+ * </dl>
+ * </dd>
+ * 
+ * <dd>-gap</dd>
+ * <dd>
+ * <dl>
+ * <dd>Find the largest prime less than or equal to the number, the smallest
+ * prime greater than it and the gap between the two.</dd>
+ * </dl>
+ * </dd>
+ * 
+ * <dd>-c</dd>
+ * <dd>
+ * <dl>
+ * <dd>Only count the primes found by -range instead of printing them.</dd>
+ * </dl>
+ * </dd>
+ * 
+ * <dd>-fac</dd>
+ * <dd>
+ * <dl>
+ * <dd>When the number is not prime, also print its prime factors found by a
+ * {@link Factorizer}.</dd>
+ * </dl>
+ * </dd>
+ * 
+ * <dd>-b1 <i>bound</i></dd>
+ * <dd>
+ * <dl>
+ * <dd>With -fac, the stage 1 bound of the p-1 and p+1 passes, at least 11.
+ * Defaults to 100000.</dd>
+ * </dl>
+ * </dd>
+ * 
+ * <dd>-b2 <i>bound</i></dd>
+ * <dd>
+ * <dl>
+ * <dd>With -fac, the stage 2 bound of the p-1 and p+1 passes. Defaults to 100
+ * times -b1, and a bound no larger than -b1 skips stage 2.</dd>
  * </dl>
  * </dd>
  * 
@@ -191,6 +414,12 @@ public class PrimeTest {
 
     /** Flag to find the closest prime less than the upper bound*/
     private boolean findClosest = false;
+
+    /** Flag to find the closest prime greater than the lower bound*/
+    private boolean findNext = false;
+
+    /** Flag to find the primes on both sides of the number and the gap between them*/
+    private boolean findGap = false;
     
     /** Flag to perform the brute force check*/
     private boolean bruteForce = false;
@@ -207,6 +436,9 @@ public class PrimeTest {
     /** Flag to perform the Solovay-Strassen test */
     private boolean solovayStrassen = false;
 
+    /** Flag to perform the Baillie-PSW test */
+    private boolean bailliePSW = false;
+
     /** Flag to print the help message */
     private boolean printHelp = false;
     
@@ -218,28 +450,104 @@ public class PrimeTest {
     
     /** The number of witnesses for testing primality in Miller-Rabin, Fermat and Solovay-Strassen*/
     private int numWitnesses = -1;
+
+    /** Flag to print every prime in the range given by -range */
+    private boolean rangeMode = false;
+
+    /** The lower bound of the range given by -range */
+    private long rangeLow = 0;
+
+    /** The upper bound of the range given by -range */
+    private long rangeHigh = 0;
+
+    /** Flag to only count the primes in the range given by -range */
+    private boolean countOnly = false;
+
+    /** Flag to print the prime factors of a number that is not prime */
+    private boolean factorize = false;
+
+    /** The stage 1 bound of the p-1 and p+1 passes given by -b1 */
+    private long smoothB1 = Factorizer.DEFAULT_B1;
+
+    /** The stage 2 bound of the p-1 and p+1 passes given by -b2, -1 for 100 * -b1 */
+    private long smoothB2 = -1;
+
+    /** The bound to count the primes up to given by -count, -1 for none */
+    private long countBound = -1;
+
+    /** The index of the prime to find given by -nth, -1 for none */
+    private long primeIndex = -1;
+
+    /** The number of threads to use, -1 for one per processor */
+    private int numThreads = -1;
+
+    /** The bit length of the random primes given by -pb */
+    private int primeBits = -1;
+
+    /** The number of digits of the random primes given by -pd */
+    private int primeDigits = -1;
+
+    /** The number of random primes to generate given by -k */
+    private int primeCount = 1;
+
+    /** Flag to generate a safe prime with -pb */
+    private boolean safePrime = false;
+
+    /** The length of the Cunningham chain to generate given by -chain */
+    private int chainLength = -1;
+
+    /** The file of numbers to test given by -in, - for standard input */
+    private String inputFile = null;
+
+    /** The binary number file the primes are written to given by -out */
+    private String outputFile = null;
     
-    /** List of all the method flags: -b, -mr, -mrd, -fp, -ss, -h*/
+    /** List of all the method flags: -b, -mr, -mrd, -fp, -ss, -bpsw, -h*/
     private static ArrayList METHODS = new ArrayList();
     
-    /** List of all the number flags: -n, -g, -w*/
+    /** List of all the number flags: -n, -g, -w, -t, -pf, -pb, -pd, -k, -chain, -count, -nth, -b1, -b2*/
     private static ArrayList NUMBERS = new ArrayList();
     
-    /** List of all the option flags: -f, -v, -gui*/
+    /** List of all the option flags: -f, -next, -gap, -safe, -v, -c, -fac, -gui*/
     private static ArrayList OPTIONS = new ArrayList();
+
+    /** List of all the flags followed by two numbers: -range*/
+    private static ArrayList RANGES = new ArrayList();
+
+    /** List of all the flags followed by a file name: -in*/
+    private static ArrayList FILES = new ArrayList();
     static {
         METHODS.add("-b");
         METHODS.add("-mr");
         METHODS.add("-mrd");
         METHODS.add("-fp");
         METHODS.add("-ss");
+        METHODS.add("-bpsw");
         METHODS.add("-h");
         NUMBERS.add("-n");
         NUMBERS.add("-g");
         NUMBERS.add("-w");
+        NUMBERS.add("-t");
+        NUMBERS.add("-pf");
+        NUMBERS.add("-pb");
+        NUMBERS.add("-pd");
+        NUMBERS.add("-k");
+        NUMBERS.add("-chain");
+        NUMBERS.add("-count");
+        NUMBERS.add("-nth");
+        NUMBERS.add("-b1");
+        NUMBERS.add("-b2");
         OPTIONS.add("-f");
+        OPTIONS.add("-next");
+        OPTIONS.add("-gap");
+        OPTIONS.add("-safe");
         OPTIONS.add("-v");
+        OPTIONS.add("-c");
+        OPTIONS.add("-fac");
         OPTIONS.add("-gui");
+        RANGES.add("-range");
+        FILES.add("-in");
+        FILES.add("-out");
     }
 
     /**
@@ -267,6 +575,26 @@ public class PrimeTest {
             if (OPTIONS.contains(flag)){
                 setOptions(flag);
             }
+            if (FILES.contains(flag)){
+                if (i+1 < args.length){
+                    setFile(flag, args[i+1].trim());
+                    i++;
+                }
+                else {
+                    System.out.println("Missing trailing file name for flag " + flag + ". Use -h to show help");
+                    return;
+                }
+            }
+            if (RANGES.contains(flag)){
+                if (i+2 < args.length){
+                    setRange(flag, args[i+1], args[i+2]);
+                    i += 2;
+                }
+                else {
+                    System.out.println("Missing trailing numbers for flag " + flag + ". Use -h to show help");
+                    return;
+                }
+            }
         }
         
         if ( args.length == 0){
@@ -277,7 +605,16 @@ public class PrimeTest {
             printHelp();
             return;
         }
-        if (!millerRabin && !fermatPrimality && !millerRabinD && !solovayStrassen && !bruteForce){
+        if (rangeMode){
+            runRange();
+            return;
+        }
+        if (countBound >= 0 || primeIndex > 0){
+            PrimeUtils.setThreads(getThreads());
+            runCount();
+            return;
+        }
+        if (!millerRabin && !fermatPrimality && !millerRabinD && !solovayStrassen && !bruteForce && !bailliePSW){
             if (verboseOutput){
                 System.out.println("Setting method to default method Miller-Rabin");
             }
@@ -290,6 +627,19 @@ public class PrimeTest {
                 numWitnesses = 100;
             }
         }
+        PrimeUtils.setThreads(getThreads());
+        if (inputFile != null){
+            runStream();
+            return;
+        }
+        if (safePrime || chainLength > 0){
+            runChain();
+            return;
+        }
+        if (primeBits > 0 || primeDigits > 0){
+            runGenerate();
+            return;
+        }
         if (input.compareTo(ZERO_INT) == 0){
             if (verboseOutput)
                 System.out.println("No number specified.  Generating a random number less than 1000\n");
@@ -324,6 +674,9 @@ public class PrimeTest {
         else if (flag.equals("-ss")){
             solovayStrassen = true;
         }
+        else if (flag.equals("-bpsw")){
+            bailliePSW = true;
+        }
         else if (flag.equals("-h")){
             printHelp = true; 
         }
@@ -341,6 +694,21 @@ public class PrimeTest {
         if (flag.equals("-f")){
             findClosest = true;
         }
+        if (flag.equals("-next")){
+            findNext = true;
+        }
+        if (flag.equals("-gap")){
+            findGap = true;
+        }
+        if (flag.equals("-safe")){
+            safePrime = true;
+        }
+        if (flag.equals("-c")){
+            countOnly = true;
+        }
+        if (flag.equals("-fac")){
+            factorize = true;
+        }
     }
     
     /**
@@ -357,6 +725,72 @@ public class PrimeTest {
             else if (flag.equals("-w")){
                 numWitnesses = Integer.parseInt(num.trim());
             }
+            else if (flag.equals("-pf")){
+                int k = Integer.parseInt(num.trim());
+                if (k < 0) {
+                    printNumberHelp(num);
+                }
+                else {
+                    PrimeUtils.setPrefilter(k == 0 ? null : new SmallPrimeFilter(k));
+                }
+            }
+            else if (flag.equals("-t")){
+                numThreads = Integer.parseInt(num.trim());
+                if (numThreads < 1) {
+                    printNumberHelp(num);
+                    numThreads = -1;
+                }
+            }
+            else if (flag.equals("-pb") || flag.equals("-pd") || flag.equals("-k") || flag.equals("-chain")){
+                int k = Integer.parseInt(num.trim());
+                if (k < (flag.equals("-pb") ? 2 : 1)) {
+                    printNumberHelp(num);
+                }
+                else if (flag.equals("-pb")) {
+                    primeBits = k;
+                }
+                else if (flag.equals("-pd")) {
+                    primeDigits = k;
+                }
+                else if (flag.equals("-chain")) {
+                    chainLength = k;
+                }
+                else {
+                    primeCount = k;
+                }
+            }
+            else if (flag.equals("-count")){
+                countBound = Long.parseLong(num.trim());
+                if (countBound < 0) {
+                    printNumberHelp(num);
+                    countBound = -1;
+                }
+            }
+            else if (flag.equals("-nth")){
+                primeIndex = Long.parseLong(num.trim());
+                if (primeIndex < 1) {
+                    printNumberHelp(num);
+                    primeIndex = -1;
+                }
+            }
+            else if (flag.equals("-b1")){
+                long b1 = Long.parseLong(num.trim());
+                if (b1 < 11 || b1 > EllipticCurveMethod.MAX_B1) {
+                    printNumberHelp(num);
+                }
+                else {
+                    smoothB1 = b1;
+                }
+            }
+            else if (flag.equals("-b2")){
+                long b2 = Long.parseLong(num.trim());
+                if (b2 < 0 || b2 > SegmentedSieve.MAX_BOUND) {
+                    printNumberHelp(num);
+                }
+                else {
+                    smoothB2 = b2;
+                }
+            }
             else if (flag.equals("-g")){
                 int digits = Integer.parseInt(num.trim());
                 if (digits < 1) {
@@ -370,46 +804,302 @@ public class PrimeTest {
     }
     
     /**
-     * Executes the tests based on the input given at the command line.
+     * Sets the file for the flags that take a file name.
+     * 
+     * @param flag the string representation of command line argument
+     * @param name the file name, - for standard input
      */
-    private void run(){
+    private void setFile(String flag, String name){
+        if (flag.equals("-in")){
+            inputFile = name;
+        }
+        if (flag.equals("-out")){
+            outputFile = name;
+        }
+    }
+
+    /**
+     * Sets the bounds for the flags that take two numbers.
+     * 
+     * @param flag the string representation of command line argument
+     * @param low the lower bound
+     * @param high the upper bound
+     */
+    private void setRange(String flag, String low, String high){
+        try {
+            if (flag.equals("-range")){
+                rangeLow = Long.parseLong(low.trim());
+                rangeHigh = Long.parseLong(high.trim());
+                rangeMode = true;
+            }
+        }catch(Exception e) {
+            System.out.println("Either the numbers following the " + flag + " flag were not specified or " + low + " " + high + " are not valid numbers");
+        }
+    }
+
+    /**
+     * Prints every prime in the range given by -range, one per line, or only
+     * their count when -c is given.
+     */
+    private void runRange(){
         long startTime = System.currentTimeMillis();
-        
-        if (findClosest){
-            if (verboseOutput){
-                System.out.println("Upper Bound       : " + input + "\n");
+        ParallelSieve sieve;
+        try {
+            sieve = new ParallelSieve(rangeLow, rangeHigh, getThreads());
+        } catch (IllegalArgumentException e){
+            System.out.println(e.getMessage() + ". The bounds must be between 0 and " + SegmentedSieve.MAX_BOUND);
+            return;
+        }
+        if (countOnly){
+            long count = sieve.count();
+            System.out.println("Primes between " + rangeLow + " and " + rangeHigh + ": " + count);
+            printTime(startTime);
+            return;
+        }
+        final PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16));
+        long count = sieve.forEachPrime(p -> out.println(p));
+        out.flush();
+        if (verboseOutput){
+            System.out.println("\nPrimes between " + rangeLow + " and " + rangeHigh + ": " + count);
+            printTime(startTime);
+        }
+    }
+
+    /**
+     * Prints the number of primes up to the bound given by -count, or the
+     * prime with the index given by -nth.
+     */
+    private void runCount(){
+        long startTime = System.currentTimeMillis();
+        try {
+            if (primeIndex > 0){
+                System.out.println("Prime number " + primeIndex + ": " + PrimeUtils.nthPrime(primeIndex));
             }
-            BigInteger q = input;
-            if (input.mod(TWO_INT).compareTo(ZERO_INT) == 0){
-                q = input.subtract(ONE_INT);
+            else {
+                System.out.println("Primes up to " + countBound + ": " + PrimeUtils.primeCount(countBound));
+            }
+        } catch (IllegalArgumentException e){
+            System.out.println(e.getMessage() + ". The primes counted must be between 0 and " + PrimeCounter.MAX_X);
+            return;
+        }
+        printTime(startTime);
+    }
+
+    /**
+     * Tests every number in the file given by -in on a pool of threads and
+     * prints the answers in input order.
+     */
+    private void runStream(){
+        long startTime = System.currentTimeMillis();
+        try {
+            boolean numberFile = !inputFile.equals("-") && NumberFile.isNumberFile(Paths.get(inputFile));
+            if (outputFile != null || numberFile){
+                runBatch(startTime, numberFile);
+                return;
             }
-                
-            boolean foundPrime = false;
-            while (!foundPrime && q.compareTo(ZERO_INT) == 1)
-            {
+            PrimeStream stream = new PrimeStream(PrimeUtils.getTest(getMethod(), numWitnesses), getThreads(),
+                    PrimeStream.DEFAULT_CAPACITY);
+            InputStream in = inputFile.equals("-") ? System.in : new FileInputStream(inputFile);
+            try {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(in), 1 << 16);
+                PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16));
+                long count = stream.process(reader, out);
                 if (verboseOutput){
-                    System.out.println("Currently Checking: " + q );
-                }
-                if (bruteForce){
-                    foundPrime = PrimeUtils.checkPrimality(q, verboseOutput);
+                    System.out.println("\nNumbers tested: " + count);
+                    printTime(startTime);
                 }
-                if (millerRabin){
-                    foundPrime = PrimeUtils.checkMillerRabin(q, numWitnesses);
+            } finally {
+                if (in != System.in){
+                    in.close();
                 }
-                if (millerRabinD){
-                    foundPrime = PrimeUtils.checkMRD(q);
+            }
+        } catch (IOException e){
+            System.out.println("Could not test the numbers in " + inputFile + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Tests the numbers given by -in in blocks with a {@link BatchTester}.
+     * A binary number file is read through its mapping, a text file is parsed
+     * a block at a time. The primes go to the number file given by -out, or
+     * without -out every answer is printed as in the streaming mode, with
+     * <code>invalid</code> for a line that is not a number.
+     * 
+     * @param startTime the time the run started
+     * @param numberFile true if the file given by -in is a binary number file
+     * @throws IOException if a file can not be read or written
+     */
+    private void runBatch(long startTime, boolean numberFile) throws IOException{
+        int threads = getThreads();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        BatchTester tester = new BatchTester(PrimeUtils.getTest(getMethod(), numWitnesses), pool, threads);
+        final PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16));
+        final NumberFile.Writer primes = outputFile == null ? null : NumberFile.create(Paths.get(outputFile));
+        BatchTester.Listener listener = new BatchTester.Listener(){
+            public void tested(long n, boolean prime){
+                try {
+                    if (primes == null)
+                        out.println(n + (prime ? "\tprime" : "\tcomposite"));
+                    else if (prime)
+                        primes.writeLong(n);
+                } catch (IOException e){
+                    throw new UncheckedIOException(e);
                 }
-                if (fermatPrimality){
-                    foundPrime = PrimeUtils.checkFermatPrimality(q, numWitnesses);
+            }
+            public void tested(BigInteger n, boolean prime){
+                try {
+                    if (primes == null)
+                        out.println(n + (prime ? "\tprime" : "\tcomposite"));
+                    else if (prime)
+                        primes.write(n);
+                } catch (IOException e){
+                    throw new UncheckedIOException(e);
                 }
-                if (solovayStrassen){
-                    foundPrime = PrimeUtils.checkSolovayStrassen(q, numWitnesses);
+            }
+        };
+        long count = 0;
+        long found = 0;
+        long invalid = 0;
+        try {
+            if (numberFile){
+                NumberFile in = new NumberFile(Paths.get(inputFile));
+                try {
+                    count = in.getLongCount() + in.getBigCount();
+                    found = tester.test(in, listener);
+                } finally {
+                    in.close();
                 }
-                if (!foundPrime) {
-                    q = q.subtract(TWO_INT);
+            }
+            else {
+                InputStream in = inputFile.equals("-") ? System.in : new FileInputStream(inputFile);
+                try {
+                    BufferedReader reader = new BufferedReader(new InputStreamReader(in), 1 << 16);
+                    BigInteger[] block = new BigInteger[BatchTester.DEFAULT_STREAM_BLOCK];
+                    int size = 0;
+                    String line;
+                    while ((line = reader.readLine()) != null){
+                        line = line.trim();
+                        if (line.length() == 0)
+                            continue;
+                        try {
+                            block[size] = new BigInteger(line);
+                        } catch (NumberFormatException e){
+                            invalid++;
+                            if (primes == null){
+                                // The answers before it are printed first to keep the input order
+                                found += testBlock(tester, block, size, listener);
+                                count += size;
+                                size = 0;
+                                out.println(line + "\tinvalid");
+                            }
+                            continue;
+                        }
+                        if (++size == block.length){
+                            found += testBlock(tester, block, size, listener);
+                            count += size;
+                            size = 0;
+                        }
+                    }
+                    found += testBlock(tester, block, size, listener);
+                    count += size;
+                } finally {
+                    if (in != System.in){
+                        in.close();
+                    }
                 }
             }
-            System.out.println("\nUpper Bound:\n  " + input + "\n\nClosest Prime:\n  " + q + "\n");
+        } catch (UncheckedIOException e){
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
+            out.flush();
+            if (primes != null){
+                primes.close();
+            }
+        }
+        if (verboseOutput){
+            System.out.println("\nNumbers tested: " + count);
+            if (invalid > 0)
+                System.out.println("Invalid lines: " + invalid);
+            System.out.println("Primes found: " + found);
+            printTime(startTime);
+        }
+    }
+
+    /**
+     * Tests the first size numbers of a block and reports each answer to the
+     * listener.
+     * 
+     * @return the number of primes among them
+     */
+    private static int testBlock(BatchTester tester, BigInteger[] block, int size, BatchTester.Listener listener){
+        if (size == 0)
+            return 0;
+        if (size < block.length){
+            BigInteger[] part = new BigInteger[size];
+            System.arraycopy(block, 0, part, 0, size);
+            block = part;
+        }
+        BitSet found = tester.test(block);
+        for (int i = 0; i < block.length; i++){
+            listener.tested(block[i], found.get(i));
+        }
+        return found.cardinality();
+    }
+
+    /**
+     * @return the PrimeUtils method code for the method flag that was given
+     */
+    private int getMethod(){
+        if (bruteForce)
+            return PrimeUtils.BRUTE_FORCE;
+        if (millerRabinD)
+            return PrimeUtils.MILLER_RABIN_DETERMINISTIC;
+        if (fermatPrimality)
+            return PrimeUtils.FERMAT;
+        if (solovayStrassen)
+            return PrimeUtils.SOLOVAY_STRASSEN;
+        if (bailliePSW)
+            return PrimeUtils.BAILLIE_PSW;
+        return PrimeUtils.MILLER_RABIN;
+    }
+
+    /**
+     * @return the number of threads given by -t, or the number of processors
+     */
+    private int getThreads(){
+        if (numThreads == -1){
+            return Runtime.getRuntime().availableProcessors();
+        }
+        return numThreads;
+    }
+
+    /**
+     * Executes the tests based on the input given at the command line.
+     */
+    private void run(){
+        long startTime = System.currentTimeMillis();
+        
+        if (findClosest || findNext || findGap){
+            int threads = getThreads();
+            ExecutorService pool = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+            PrimeSearch search = new PrimeSearch(PrimeUtils.getTest(getMethod(), numWitnesses),
+                    PrimeSearch.DEFAULT_SIEVE_PRIMES, pool, threads);
+            try {
+                if (findGap)
+                    runGap(search);
+                else if (findNext)
+                    runNext(search);
+                else
+                    runClosest(search);
+            } finally {
+                if (pool != null)
+                    pool.shutdownNow();
+            }
+            if (verboseOutput){
+                System.out.println("Candidates sieved : " + search.getSieved());
+                System.out.println("Candidates tested : " + search.getTested());
+            }
         }
         else {
             boolean isPrime = false;
@@ -417,23 +1107,197 @@ public class PrimeTest {
                 isPrime = PrimeUtils.checkPrimality(input, verboseOutput);
             else if (millerRabin)
                 isPrime = PrimeUtils.checkMillerRabin(input, numWitnesses);
-            else if (millerRabinD)
+            else if (millerRabinD){
+                if (verboseOutput)
+                    printMRDRegime();
                 isPrime = PrimeUtils.checkMRD(input);
+            }
             else if (fermatPrimality)
                 isPrime = PrimeUtils.checkFermatPrimality(input, numWitnesses);
             else if (solovayStrassen)
                 isPrime = PrimeUtils.checkSolovayStrassen(input, numWitnesses);
+            else if (bailliePSW)
+                isPrime = PrimeUtils.checkBailliePSW(input);
             
             if(isPrime){
                 System.out.println(input + "\nis prime.");
             }
             else {
                 System.out.println(input + "\nis not prime.");
+                if (factorize)
+                    printFactors();
             }
         }
+        if (verboseOutput && PrimeUtils.getPrefilter() != null){
+            System.out.println(PrimeUtils.getPrefilter());
+        }
         printTime(startTime);
     }
     
+    /**
+     * Prints the prime factors of the input asked for by -fac, as powers of
+     * distinct primes.
+     */
+    private void printFactors(){
+        if (input.signum() <= 0){
+            return;
+        }
+        long b2 = smoothB2 >= 0 ? smoothB2 : 100 * smoothB1;
+        BigInteger[] factors;
+        try {
+            factors = PrimeUtils.factor(input, smoothB1, Math.min(b2, SegmentedSieve.MAX_BOUND));
+        } catch (IllegalArgumentException e){
+            System.out.println("The factors could not be found. " + e.getMessage());
+            return;
+        } catch (IllegalStateException e){
+            System.out.println("The factors could not be found. " + e.getMessage());
+            return;
+        }
+        StringBuffer buff = new StringBuffer(input + " =");
+        for (int i = 0; i < factors.length; ){
+            int j = i;
+            while (j < factors.length && factors[j].equals(factors[i]))
+                j++;
+            buff.append(i == 0 ? " " : " * ").append(factors[i]);
+            if (j - i > 1)
+                buff.append("^").append(j - i);
+            i = j;
+        }
+        System.out.println(buff.toString());
+    }
+    
+    /**
+     * Generates the random primes asked for by -pb or -pd and -k, on the
+     * threads given by -t.
+     */
+    private void runGenerate(){
+        long startTime = System.currentTimeMillis();
+        int threads = getThreads();
+        ExecutorService pool = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+        RandomPrimeGenerator generator = new RandomPrimeGenerator(PrimeUtils.getTest(getMethod(), numWitnesses),
+                pool, threads);
+        try {
+            if (primeCount == 1){
+                System.out.println(primeBits > 0 ? generator.generate(primeBits) : generator.generateDigits(primeDigits));
+            }
+            else {
+                BigInteger[] primes = primeBits > 0 ? generator.generate(primeBits, primeCount)
+                        : generator.generateDigits(primeDigits, primeCount);
+                PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16));
+                for (BigInteger p : primes){
+                    out.println(p);
+                }
+                out.flush();
+            }
+        } finally {
+            if (pool != null)
+                pool.shutdownNow();
+        }
+        if (verboseOutput){
+            long millis = Math.max(1, System.currentTimeMillis() - startTime);
+            System.out.println("\nPrimes generated: " + primeCount + " (" + (primeCount * 1000L / millis) + " per second)");
+            printTime(startTime);
+        }
+    }
+
+    /**
+     * Generates the safe prime asked for by -safe or the Cunningham chain
+     * asked for by -chain, with -pb bits, on the threads given by -t.
+     */
+    private void runChain(){
+        if (primeBits < 0){
+            System.out.println("-safe and -chain need the size in bits given by -pb. Use -h to show help");
+            return;
+        }
+        long startTime = System.currentTimeMillis();
+        int threads = getThreads();
+        ExecutorService pool = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+        CunninghamChainGenerator generator = new CunninghamChainGenerator(PrimeUtils.getTest(getMethod(), numWitnesses),
+                pool, threads);
+        try {
+            if (safePrime){
+                System.out.println(generator.safePrime(primeBits));
+            }
+            else {
+                for (BigInteger p : generator.findChain(primeBits, chainLength)){
+                    System.out.println(p);
+                }
+            }
+        } finally {
+            if (pool != null)
+                pool.shutdownNow();
+        }
+        if (verboseOutput){
+            System.out.println("\nCandidates sieved : " + generator.getSieved());
+            System.out.println("Tests run         : " + generator.getTested());
+            printTime(startTime);
+        }
+    }
+
+    /**
+     * Prints which base set the deterministic Miller-Rabin test uses for the
+     * input.
+     */
+    private void printMRDRegime(){
+        switch (PrimeUtils.getMRDRegime(input)){
+        case PrimeUtils.MRD_LONG:
+            System.out.println("Deterministic bases: the seven long bases, proven below 2^64");
+            break;
+        case PrimeUtils.MRD_PROVEN:
+            System.out.println("Deterministic bases: " + Arrays.toString(PrimeUtils.getMRDBases(input))
+                    + ", proven for this range");
+            break;
+        default:
+            System.out.println("Deterministic bases: 2 to 2*bitLength^2, exact if the GRH holds");
+        }
+    }
+
+    /**
+     * Finds the closest prime less than or equal to the input.
+     * 
+     * @param search the search to run
+     */
+    private void runClosest(PrimeSearch search){
+        if (verboseOutput){
+            System.out.println("Upper Bound       : " + input + "\n");
+        }
+        BigInteger q = search.previous(input);
+        if (q == null){
+            System.out.println("\nThere is no prime less than or equal to " + input + "\n");
+            return;
+        }
+        System.out.println("\nUpper Bound:\n  " + input + "\n\nClosest Prime:\n  " + q + "\n");
+    }
+
+    /**
+     * Finds the closest prime greater than or equal to the input.
+     * 
+     * @param search the search to run
+     */
+    private void runNext(PrimeSearch search){
+        if (verboseOutput){
+            System.out.println("Lower Bound       : " + input + "\n");
+        }
+        BigInteger q = search.next(input);
+        System.out.println("\nLower Bound:\n  " + input + "\n\nNext Prime:\n  " + q + "\n");
+    }
+
+    /**
+     * Finds the primes on both sides of the input and the gap between them.
+     * 
+     * @param search the search to run
+     */
+    private void runGap(PrimeSearch search){
+        BigInteger below = search.previous(input);
+        if (below == null){
+            System.out.println("\nThere is no prime less than or equal to " + input + "\n");
+            return;
+        }
+        BigInteger above = search.next(input.add(ONE_INT));
+        System.out.println("\nNumber:\n  " + input + "\n\nPrevious Prime:\n  " + below
+                + "\n\nNext Prime:\n  " + above + "\n\nGap:\n  " + above.subtract(below) + "\n");
+    }
+
     /**
      * Passes along the arguments to the PrimeTest constructor. 
      * 
@@ -497,10 +1361,10 @@ public class PrimeTest {
         help.append("Prime test is a small application to test for the ");
         help.append("primality of a number or the closest prime to an ");
         help.append("upper bound.\n\n");
-        help.append("Usage PrimeTest <method> [-f] <number type> <number> [<-w> <number>]\n\n");
+        help.append("Usage PrimeTest <method> [-f | -next | -gap] <number type> <number> [<-w> <number>]\n\n");
         help.append(" Method Options \n");
         help.append("  -b \n");
-        help.append("         Brute Force check if a number is prime\n");
+        help.append("         Brute Force check if a number is prime. Deterministic up to about 10^28\n");
         help.append("  -mr \n");
         help.append("         Miller-Rabin primality test.  Must also specify -w flag and number\n");
         help.append("  -mrd \n");
@@ -509,6 +1373,8 @@ public class PrimeTest {
         help.append("         Fermat primality test. Checks against Carmichael numbers. Must also specify -w flag and number\n");
         help.append("  -ss \n");
         help.append("         Solovay-Strassen primality test. Must also specify -w flag and number\n");
+        help.append("  -bpsw \n");
+        help.append("         Baillie-PSW primality test. Strong base 2 test plus a strong Lucas test.\n");
         help.append("  -h \n");
         help.append("         output this help message\n\n");
         help.append("  Number Type Options \n");
@@ -516,6 +1382,31 @@ public class PrimeTest {
         help.append("         Use the <number> specified.\n\n");
         help.append("  -g <number>\n");
         help.append("         Generate a number of <number> digits\n\n");
+        help.append("  -range <low> <high>\n");
+        help.append("         Print every prime from <low> to <high> using a segmented sieve.\n\n");
+        help.append("  -count <x>\n");
+        help.append("         Count the primes up to <x> with the Meissel-Lehmer method.\n\n");
+        help.append("  -nth <n>\n");
+        help.append("         Find the <n>-th prime, -nth 1 is 2.\n\n");
+        help.append("  -t <number>\n");
+        help.append("         Use <number> threads for -range, -count, -nth, -fac, -b, -f and -in. Defaults to the number of processors.\n\n");
+        help.append("  -pf <number>\n");
+        help.append("         Divide by the first <number> primes before any test. 0 turns it off.\n\n");
+        help.append("  -pb <bits>\n");
+        help.append("         Generate a random probable prime of exactly <bits> bits.\n\n");
+        help.append("  -pd <digits>\n");
+        help.append("         Generate a random probable prime of exactly <digits> digits.\n\n");
+        help.append("  -k <count>\n");
+        help.append("         With -pb or -pd, generate <count> primes in parallel.\n\n");
+        help.append("  -safe \n");
+        help.append("         Generate a random safe prime of -pb bits.\n\n");
+        help.append("  -chain <length>\n");
+        help.append("         Generate a random Cunningham chain of <length> primes, the first of -pb bits.\n\n");
+        help.append("  -in <file>\n");
+        help.append("         Test every number in <file>, one per line, or a binary number file.\n");
+        help.append("         Use - for standard input.\n\n");
+        help.append("  -out <file>\n");
+        help.append("         With -in, write the primes found to <file> as a binary number file.\n\n");
         help.append("  Witnesses Option \n");
         help.append("  -w <number>\n");
         help.append("         Use <number> witnesses in the Miller-Rabin, Fermat, or Solovay-Strassen tests.\n\n");
@@ -523,7 +1414,20 @@ public class PrimeTest {
         help.append("  -v \n");
         help.append("         Show verbose output.\n\n");
         help.append("  -f \n");
-        help.append("         Find the closest prime less than or equal to the specified or generated number.\n\n");
+        help.append("         Find the closest prime less than or equal to the specified or generated number.\n");
+        help.append("         The candidates are tested several at a time on the threads given by -t.\n\n");
+        help.append("  -next \n");
+        help.append("         Find the closest prime greater than or equal to the specified or generated number.\n\n");
+        help.append("  -gap \n");
+        help.append("         Find the primes on both sides of the number and the gap between them.\n\n");
+        help.append("  -c \n");
+        help.append("         Only count the primes found by -range instead of printing them.\n\n");
+        help.append("  -fac \n");
+        help.append("         Print the prime factors of the number when it is not prime.\n\n");
+        help.append("  -b1 <bound>\n");
+        help.append("         With -fac, the stage 1 bound of the p-1 and p+1 passes. Defaults to 100000.\n\n");
+        help.append("  -b2 <bound>\n");
+        help.append("         With -fac, the stage 2 bound of the p-1 and p+1 passes. Defaults to 100 times -b1.\n\n");
         help.append("Examples:\n\n");
         help.append("  java -jar PrimeTest.jar -b -n 19827362\n");
         help.append("     will brute force check the primality of 19827362\n\n");
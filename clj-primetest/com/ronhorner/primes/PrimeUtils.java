@@ -3,6 +3,11 @@ package com.ronhorner.primes;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.security.SecureRandom;
+import java.util.BitSet;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
 
 /**
  * Ron Horner <br>
@@ -41,12 +46,6 @@ public class PrimeUtils {
     /** The default scale for division functions */
     public static final int DEFAULT_SCALE = 10;
 
-    /** The amount that the square root could be wrong. */
-    static private BigDecimal error;
-
-    /** Counter for the number of iterations */
-    static private int iterations;
-
     /** The scale for division functions */
     static private int scale = DEFAULT_SCALE;
 
@@ -56,6 +55,55 @@ public class PrimeUtils {
     /** Thirty Seconds in milliseconds */
     static public final long THIRTY_SECONDS = 30000;
 
+    /** The filter run ahead of every primality test, null when disabled */
+    static private volatile SmallPrimeFilter prefilter = new SmallPrimeFilter();
+
+    /** One witness source per thread for the tests made by getTest */
+    static private final ThreadLocal<SecureRandom> RANDOM = ThreadLocal.withInitial(SecureRandom::new);
+
+    /** The number of threads the parallel tests may use */
+    static private volatile int threads = Runtime.getRuntime().availableProcessors();
+
+    /** Method code for {@link #checkPrimality(BigInteger, boolean)} */
+    public static final int BRUTE_FORCE = 0;
+
+    /** Method code for {@link #checkMillerRabin(BigInteger, int)} */
+    public static final int MILLER_RABIN = 1;
+
+    /** Method code for {@link #checkMRD(BigInteger)} */
+    public static final int MILLER_RABIN_DETERMINISTIC = 2;
+
+    /** Method code for {@link #checkFermatPrimality(BigInteger, int)} */
+    public static final int FERMAT = 3;
+
+    /** Method code for {@link #checkSolovayStrassen(BigInteger, int)} */
+    public static final int SOLOVAY_STRASSEN = 4;
+
+    /** Method code for {@link #checkBailliePSW(BigInteger)} */
+    public static final int BAILLIE_PSW = 5;
+
+    /** checkMRD hands n &lt; 2^63 to {@link LongPrimality}, which is exact */
+    public static final int MRD_LONG = 0;
+
+    /** checkMRD uses a published base set that is proven for the range of n */
+    public static final int MRD_PROVEN = 1;
+
+    /** checkMRD tries every base up to 2*bitLength(n)^2, exact only if the GRH holds */
+    public static final int MRD_BACH = 2;
+
+    /**
+     * The upper limits of the ranges with a proven base set, every n below
+     * the limit that passes every base of the set is prime
+     */
+    static private final BigInteger[] MRD_LIMITS = {
+            new BigInteger("318665857834031151167461"),
+            new BigInteger("3317044064679887385961981") };
+
+    /** The proven base set for each range, Jaeschke (1993) and Sorenson and Webster (2015) */
+    static private final int[][] MRD_BASES = {
+            { 2, 3, 5, 7, 11, 13, 17, 19, 23, 29, 31, 37 },
+            { 2, 3, 5, 7, 11, 13, 17, 19, 23, 29, 31, 37, 41 } };
+
     /** Static representation of e */
     static public final BigDecimal E = new BigDecimal(
             "2.718281828459045235360287471352662497757247093699959574966967627724076630353547594571382178525166427427466391932003059921817413596629043572900334295260595630738132328627943490763233829880753195251");
@@ -116,6 +164,12 @@ public class PrimeUtils {
      * </a>
      * </p>
      * 
+     * <p>
+     * The error and the iteration count are kept in local variables so the
+     * function can be used from several threads at once. For an exact
+     * integer root use {@link IntegerRoots#isqrt(BigInteger)} instead.
+     * </p>
+     * 
      * @param n
      *            the BigDecimal to find the square root of
      * @return the approximate square root.
@@ -135,7 +189,8 @@ public class PrimeUtils {
 
         // Iterate
 
-        iterations = 0;
+        BigDecimal error;
+        int iterations = 0;
         boolean more = true;
         while (more) {
             lastGuess = guess;
@@ -153,6 +208,320 @@ public class PrimeUtils {
         return guess;
     }
 
+    /**
+     * <p>
+     * Sets the small prime filter that every primality test in this class
+     * runs before doing any real work.
+     * </p>
+     * 
+     * @param filter
+     *            the new filter, or null to turn the prefilter off
+     */
+    static public void setPrefilter(SmallPrimeFilter filter) {
+        prefilter = filter;
+    }
+
+    /**
+     * @return the small prime filter run ahead of every test, or null
+     */
+    static public SmallPrimeFilter getPrefilter() {
+        return prefilter;
+    }
+
+    /**
+     * Sets the number of threads that the parallel tests, such as the brute
+     * force check, may use.
+     * 
+     * @param t
+     *            the number of threads, at least one
+     */
+    static public void setThreads(int t) {
+        if (t < 1) {
+            throw new IllegalArgumentException("Invalid thread count " + t);
+        }
+        threads = t;
+    }
+
+    /**
+     * @return the number of threads the parallel tests may use
+     */
+    static public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * <p>
+     * Wraps one of the tests in this class as a {@link PrimalityTest}. The
+     * random tests draw their witnesses from one SecureRandom per thread
+     * instead of seeding a new one for every number, and the brute force test
+     * divides on the calling thread only, so the returned test is meant to be
+     * called from many worker threads at once.
+     * </p>
+     * 
+     * @param method
+     *            one of the method codes such as {@link #MILLER_RABIN}
+     * @param witnesses
+     *            the number of witnesses for the random tests
+     * @return the test
+     */
+    static public PrimalityTest getTest(final int method, final int witnesses) {
+        if (method < BRUTE_FORCE || method > BAILLIE_PSW) {
+            throw new IllegalArgumentException("Unknown method " + method);
+        }
+        return new PrimalityTest() {
+            public boolean isPrime(BigInteger n) {
+                switch (method) {
+                case BRUTE_FORCE:
+                    return checkPrimality(n, false, 1);
+                case MILLER_RABIN:
+                    return checkMillerRabin(n, witnesses, RANDOM.get());
+                case MILLER_RABIN_DETERMINISTIC:
+                    return checkMRD(n);
+                case FERMAT:
+                    return checkFermatPrimality(n, witnesses, RANDOM.get());
+                case SOLOVAY_STRASSEN:
+                    return checkSolovayStrassen(n, witnesses, RANDOM.get());
+                default:
+                    return checkBailliePSW(n);
+                }
+            }
+        };
+    }
+
+    /**
+     * <p>
+     * Finds the smallest prime greater than or equal to <i>n</i>. The
+     * candidates are sieved by small primes with a {@link PrimeSearch} and
+     * the survivors are given to the Baillie-PSW test.
+     * </p>
+     * 
+     * @param n
+     *            the lower bound
+     * @return the smallest probable prime at or above n
+     */
+    static public BigInteger nextPrime(BigInteger n) {
+        return new PrimeSearch(getTest(BAILLIE_PSW, 0)).next(n);
+    }
+
+    /**
+     * <p>
+     * Finds the largest prime less than or equal to <i>n</i> in the same way
+     * as {@link #nextPrime(BigInteger)}.
+     * </p>
+     * 
+     * @param n
+     *            the upper bound
+     * @return the largest probable prime at or below n, or null if n is less
+     *         than two
+     */
+    static public BigInteger previousPrime(BigInteger n) {
+        return new PrimeSearch(getTest(BAILLIE_PSW, 0)).previous(n);
+    }
+
+    /**
+     * <p>
+     * Finds the gap around <i>n</i>, the difference between the largest
+     * prime less than or equal to <i>n</i> and the smallest prime greater
+     * than <i>n</i>. When <i>n</i> is itself prime this is the gap to the
+     * next prime.
+     * </p>
+     * 
+     * @param n
+     *            the number in question
+     * @return the length of the gap around n, or null if n is less than two
+     */
+    static public BigInteger primeGap(BigInteger n) {
+        PrimeSearch search = new PrimeSearch(getTest(BAILLIE_PSW, 0));
+        BigInteger below = search.previous(n);
+        if (below == null) {
+            return null;
+        }
+        return search.next(n.add(BigInteger.ONE)).subtract(below);
+    }
+
+    /**
+     * <p>
+     * Tests many numbers at once with a {@link BatchTester} on the number of
+     * threads given to {@link #setThreads(int)}. Each worker thread keeps its
+     * own witness source for the random tests.
+     * </p>
+     * 
+     * @param numbers
+     *            the numbers in question
+     * @param method
+     *            one of the method codes such as {@link #MILLER_RABIN}
+     * @param witnesses
+     *            the number of witnesses for the random tests
+     * @return bit i is set if numbers[i] is found prime
+     */
+    static public BitSet checkBatch(BigInteger[] numbers, int method, int witnesses) {
+        PrimalityTest test = getTest(method, witnesses);
+        if (threads == 1) {
+            return new BatchTester(test, null, 1).test(numbers);
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            return new BatchTester(test, pool, threads).test(numbers);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * <p>
+     * Tests the numbers of a stream with a {@link BatchTester} on the number
+     * of threads given to {@link #setThreads(int)}, reading
+     * {@link BatchTester#DEFAULT_STREAM_BLOCK} numbers at a time so the whole
+     * stream is never held in memory.
+     * </p>
+     * 
+     * @param numbers
+     *            the numbers in question
+     * @param method
+     *            one of the method codes such as {@link #MILLER_RABIN}
+     * @param witnesses
+     *            the number of witnesses for the random tests
+     * @return bit i is set if the i-th number of the stream is found prime
+     */
+    static public BitSet checkBatch(Stream<BigInteger> numbers, int method, int witnesses) {
+        PrimalityTest test = getTest(method, witnesses);
+        if (threads == 1) {
+            return new BatchTester(test, null, 1).test(numbers);
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            return new BatchTester(test, pool, threads).test(numbers);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * <p>
+     * Tests many longs at once with {@link LongPrimality}, on the number of
+     * threads given to {@link #setThreads(int)}. The long test is exact, so
+     * there is no method or witness count to choose.
+     * </p>
+     * 
+     * @param numbers
+     *            the numbers in question
+     * @return bit i is set if numbers[i] is prime
+     */
+    static public BitSet checkBatch(long[] numbers) {
+        if (threads == 1) {
+            return new BatchTester(null, null, 1).test(numbers);
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            return new BatchTester(null, pool, threads).test(numbers);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * <p>
+     * Counts the primes less than or equal to <i>x</i> with a
+     * {@link PrimeCounter}, on the number of threads given to
+     * {@link #setThreads(int)}.
+     * </p>
+     * 
+     * @param x
+     *            the bound, at most {@link PrimeCounter#MAX_X}
+     * @return &pi;(x), the number of primes up to x
+     */
+    static public long primeCount(long x) {
+        if (threads == 1) {
+            return new PrimeCounter().pi(x);
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            return new PrimeCounter(pool, threads).pi(x);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * <p>
+     * Finds the n-th prime with {@link PrimeCounter#nthPrime(long)}, on the
+     * number of threads given to {@link #setThreads(int)}.
+     * </p>
+     * 
+     * @param n
+     *            the index of the prime, nthPrime(1) is 2
+     * @return the n-th prime
+     */
+    static public long nthPrime(long n) {
+        if (threads == 1) {
+            return new PrimeCounter().nthPrime(n);
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            return new PrimeCounter(pool, threads).nthPrime(n);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * <p>
+     * Splits n into its prime factors with a {@link Factorizer}, using the
+     * Baillie-PSW test to decide when a factor is prime and running the
+     * elliptic curves on the number of threads given to
+     * {@link #setThreads(int)}.
+     * </p>
+     * 
+     * @param n
+     *            a positive number
+     * @return the prime factors of n in increasing order, with multiplicity
+     */
+    static public BigInteger[] factor(BigInteger n) {
+        return factor(n, Factorizer.DEFAULT_B1, Factorizer.DEFAULT_B2);
+    }
+
+    /**
+     * <p>
+     * Splits n into its prime factors as {@link #factor(BigInteger)} does,
+     * with the given bounds for the p-1 and p+1 passes.
+     * </p>
+     * 
+     * @param n
+     *            a positive number
+     * @param b1
+     *            the stage 1 bound, at least 11
+     * @param b2
+     *            the stage 2 bound, no stage 2 when it is at most b1
+     * @return the prime factors of n in increasing order, with multiplicity
+     */
+    static public BigInteger[] factor(BigInteger n, long b1, long b2) {
+        if (threads == 1) {
+            return new Factorizer(getTest(BAILLIE_PSW, 0), null, 1, b1, b2).factor(n);
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            return new Factorizer(getTest(BAILLIE_PSW, 0), pool, threads, b1, b2).factor(n);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs the prefilter on <i>n</i>.
+     * 
+     * @param n
+     *            the number about to be tested
+     * @return the answer from {@link SmallPrimeFilter#classify(BigInteger)},
+     *         or {@link SmallPrimeFilter#UNKNOWN} when there is no filter
+     */
+    static private int prefilter(BigInteger n) {
+        SmallPrimeFilter filter = prefilter;
+        if (filter == null) {
+            return SmallPrimeFilter.UNKNOWN;
+        }
+        return filter.classify(n);
+    }
+
     /**
      * <p>
      * Check for primality using a very simple method.
@@ -172,23 +541,59 @@ public class PrimeUtils {
      * </dl>
      * <dd>return <u>prime</u></dd>
      * 
+     * <p>
+     * When the square root of <i>n</i> fits in
+     * {@link TrialDivision#MAX_DIVISOR_BITS} bits the work is handed to
+     * {@link TrialDivision}, which only tries divisors coprime to 210, divides
+     * with primitive longs and spreads the divisors over
+     * {@link #getThreads()} threads.
+     * </p>
+     * 
      * @param n
      *            BigInteger to check for primality
      * @return true if the BigInteger is prime
      */
     static public boolean checkPrimality(BigInteger n, boolean verboseOutput) {
+        return checkPrimality(n, verboseOutput, threads);
+    }
+
+    /**
+     * Same as {@link #checkPrimality(BigInteger, boolean)} but divides with
+     * <i>t</i> threads.
+     * 
+     * @param n
+     *            BigInteger to check for primality
+     * @param verboseOutput
+     *            print the progress
+     * @param t
+     *            the number of threads
+     * @return true if the BigInteger is prime
+     */
+    static public boolean checkPrimality(BigInteger n, boolean verboseOutput, int t) {
         boolean rval = true;
         long time = System.currentTimeMillis();
         if (verboseOutput){
             System.out.println("Big Integer    = " + n);
             System.out.println("Starting time  = " + time);
         }
+        int filtered = prefilter(n);
+        if (filtered != SmallPrimeFilter.UNKNOWN) {
+            if (verboseOutput && filtered == SmallPrimeFilter.COMPOSITE)
+                System.out.println(n + " is divisible by a small prime");
+            return filtered == SmallPrimeFilter.PRIME;
+        }
         if (n.mod(TWO_INT).compareTo(ZERO_INT) == 0) {
             rval = false;
             if (verboseOutput)
                 System.out.println(n + " is divisible by 2");
+        } else if (n.compareTo(ONE_INT) > 0 && TrialDivision.supports(n)) {
+            long factor = new TrialDivision(t).findFactor(n);
+            rval = factor == 0;
+            if (verboseOutput && !rval){
+                System.out.println(n + " is divisible by " + factor);
+            }
         } else {
-            BigInteger sqrt = getSquareRoot(n).toBigInteger();
+            BigInteger sqrt = IntegerRoots.isqrt(n);
             BigInteger modulo = new BigInteger("3");
             if (verboseOutput){
                 System.out.println("Square Root    = " + sqrt);
@@ -269,6 +674,11 @@ public class PrimeUtils {
      * </dl>
      * <dd>return <u>prime</u></dd>
      * 
+     * <p>
+     * Numbers smaller than 2<sup>63</sup> are handed to
+     * {@link LongPrimality#isPrime(long)} which is exact and never allocates.
+     * </p>
+     * 
      * @param n
      *            The number in question
      * @param t
@@ -277,36 +687,43 @@ public class PrimeUtils {
      *         witnesses t.
      */
     public static boolean checkMillerRabin(BigInteger n, int t) {
-        boolean rval = true;
-        SecureRandom srnd = new SecureRandom();
-        BigInteger r = n.subtract(ONE_INT);
-        BigInteger s = ZERO_INT;
-        BigInteger a = ZERO_INT;
-        BigInteger y = ZERO_INT;
-
-        while (r.mod(TWO_INT).compareTo(ZERO_INT) == 0) {
-            r = r.divide(TWO_INT);
-            s = s.add(ONE_INT);
-        }
-
-        for (int i = 1; i <= t && rval; i++) {
-            a = new BigInteger(n.subtract(TWO_INT).bitCount(), srnd).add(TWO_INT);
-            y = a.modPow(r, n);
-            if (y.compareTo(ONE_INT) != 0 && (y.compareTo(n.subtract(ONE_INT)) != 0)) {
-                BigInteger j = ONE_INT;
-                while (j.compareTo(s.subtract(ONE_INT)) <= 0 && y.compareTo(n.subtract(ONE_INT)) != 0 && rval) {
-                    y = y.modPow(TWO_INT, n);
-                    if (y.compareTo(ONE_INT) == 0) {
-                        rval = false;
-                    }
-                    j = j.add(ONE_INT);
-                }
-                if (y.compareTo(n.subtract(ONE_INT)) != 0) {
-                    rval = false;
-                }
+        return checkMillerRabin(n, t, new SecureRandom());
+    }
+
+    /**
+     * Same as {@link #checkMillerRabin(BigInteger, int)} but takes the
+     * witnesses from <i>srnd</i>, so a caller testing many numbers can reuse
+     * one random source.
+     * 
+     * @param n
+     *            The number in question
+     * @param t
+     *            The number of witnesses.
+     * @param srnd
+     *            The source of random witnesses
+     * @return true if the number is most likely prime given the number of
+     *         witnesses t.
+     */
+    public static boolean checkMillerRabin(BigInteger n, int t, Random srnd) {
+        int filtered = prefilter(n);
+        if (filtered != SmallPrimeFilter.UNKNOWN) {
+            return filtered == SmallPrimeFilter.PRIME;
+        }
+        if (n.bitLength() < 64) {
+            return LongPrimality.isPrime(n.longValue());
+        }
+        BigInteger nMinusOne = n.subtract(ONE_INT);
+        int s = nMinusOne.getLowestSetBit();
+        BigInteger r = nMinusOne.shiftRight(s);
+        MontgomeryContext context = squaringContext(n, s);
+
+        for (int i = 1; i <= t; i++) {
+            BigInteger a = new BigInteger(n.subtract(TWO_INT).bitCount(), srnd).add(TWO_INT);
+            if (!strongProbablePrime(n, nMinusOne, r, s, a, context)) {
+                return false;
             }
         }
-        return rval;
+        return true;
     }
 
     /**
@@ -331,50 +748,98 @@ public class PrimeUtils {
      * <p>
      * This function is a variation of the classic Miller-Rabin test in that it
      * makes the function deterministic. This is done by not chosing random
-     * numbers but by working our way through all numbers from 2 to 2*ln(n)^2.
+     * numbers but by working through a fixed set of bases that is known to
+     * catch every composite in the range of <i>n</i>.
      * </p>
      * <a href="http://en.wikipedia.org/wiki/Miller-Rabin_test">
      * http://en.wikipedia.org/wiki/Miller-Rabin_test
      * </a>
+     * <p>
+     * Numbers smaller than 2<sup>63</sup> are handed to
+     * {@link LongPrimality#isPrime(long)} which uses a fixed set of seven
+     * bases that is already deterministic for that range. Below
+     * 3.3*10<sup>24</sup> the published minimal base sets are used, the
+     * primes up to 37 below 3.2*10<sup>23</sup> and up to 41 above that.
+     * Only larger numbers fall back to every base from 2 to
+     * 2*bitLength(n)<sup>2</sup>, which is above Bach's bound of
+     * 2*ln(n)<sup>2</sup> and so deterministic only if the generalized Riemann
+     * hypothesis holds. {@link #getMRDRegime(BigInteger)} tells which of these
+     * is used for a number.
+     * </p>
      * @param n
      *            The number in question
      * @return true if the number is prime for all witnesses
      */
     public static boolean checkMRD(BigInteger n) {
-        boolean rval = true;
-        
-        SecureRandom srnd = new SecureRandom();
-        BigInteger r = n.subtract(ONE_INT);
-        BigInteger s = ZERO_INT;
-        BigInteger a = ZERO_INT;
-        BigInteger y = ZERO_INT;
-
-        while (r.mod(TWO_INT).compareTo(ZERO_INT) == 0) {
-            r = r.divide(TWO_INT);
-            s = s.add(ONE_INT);
-        }
-        
-        BigInteger t = new BigInteger(n.bitLength()+"");
-        t = t.pow(2);
-        t = t.multiply(TWO_INT);
-        for (BigInteger i = TWO_INT; i.compareTo(t) < 1 && rval; i = i.add(ONE_INT)) {
-            a = i;
-            y = a.modPow(r, n);
-            if (y.compareTo(ONE_INT) != 0 && (y.compareTo(n.subtract(ONE_INT)) != 0)) {
-                BigInteger j = ONE_INT;
-                while (j.compareTo(s.subtract(ONE_INT)) <= 0 && y.compareTo(n.subtract(ONE_INT)) != 0 && rval) {
-                    y = y.modPow(TWO_INT, n);
-                    if (y.compareTo(ONE_INT) == 0) {
-                        rval = false;
-                    }
-                    j = j.add(ONE_INT);
-                }
-                if (y.compareTo(n.subtract(ONE_INT)) != 0) {
-                    rval = false;
+        int filtered = prefilter(n);
+        if (filtered != SmallPrimeFilter.UNKNOWN) {
+            return filtered == SmallPrimeFilter.PRIME;
+        }
+        if (n.bitLength() < 64) {
+            return LongPrimality.isPrime(n.longValue());
+        }
+        if (!n.testBit(0)) {
+            return false;
+        }
+        BigInteger nMinusOne = n.subtract(ONE_INT);
+        int s = nMinusOne.getLowestSetBit();
+        BigInteger r = nMinusOne.shiftRight(s);
+        MontgomeryContext context = squaringContext(n, s);
+
+        int[] bases = mrdBases(n);
+        if (bases != null) {
+            for (int i = 0; i < bases.length; i++) {
+                if (!strongProbablePrime(n, nMinusOne, r, s, BigInteger.valueOf(bases[i]), context)) {
+                    return false;
                 }
             }
+            return true;
         }
-        return rval;
+        int t = 2 * n.bitLength() * n.bitLength();
+        for (int i = 2; i <= t; i++) {
+            if (!strongProbablePrime(n, nMinusOne, r, s, BigInteger.valueOf(i), context)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tells how {@link #checkMRD(BigInteger)} makes its answer exact for
+     * <i>n</i>.
+     * 
+     * @param n
+     *            the number in question
+     * @return {@link #MRD_LONG}, {@link #MRD_PROVEN} or {@link #MRD_BACH}
+     */
+    static public int getMRDRegime(BigInteger n) {
+        if (n.bitLength() < 64) {
+            return MRD_LONG;
+        }
+        return mrdBases(n) != null ? MRD_PROVEN : MRD_BACH;
+    }
+
+    /**
+     * @param n
+     *            the number in question
+     * @return a copy of the proven base set {@link #checkMRD(BigInteger)}
+     *         uses for <i>n</i>, or null if it does not use one
+     */
+    static public int[] getMRDBases(BigInteger n) {
+        int[] bases = n.bitLength() < 64 ? null : mrdBases(n);
+        return bases == null ? null : bases.clone();
+    }
+
+    /**
+     * @return the proven base set for n, or null above the table
+     */
+    static private int[] mrdBases(BigInteger n) {
+        for (int i = 0; i < MRD_LIMITS.length; i++) {
+            if (n.compareTo(MRD_LIMITS[i]) < 0) {
+                return MRD_BASES[i];
+            }
+        }
+        return null;
     }
     
     /**
@@ -399,6 +864,12 @@ public class PrimeUtils {
      * </dd>
      * <dd>return <u>probably prime </u></dd>
      * 
+     * <p>
+     * Carmichael numbers pass every Fermat witness, so they are looked up in
+     * {@link Carmichael}, which is complete up to
+     * {@link Carmichael#getVerifiedBound()}.
+     * </p>
+     * 
      * @param n 
      *            The number in question
      * @param w
@@ -407,10 +878,30 @@ public class PrimeUtils {
      *         witnesses w.
      */
     public static boolean checkFermatPrimality(BigInteger n, int w){
+        return checkFermatPrimality(n, w, new SecureRandom());
+    }
+
+    /**
+     * Same as {@link #checkFermatPrimality(BigInteger, int)} but takes the
+     * witnesses from <i>srnd</i>.
+     * 
+     * @param n 
+     *            The number in question
+     * @param w
+     *            The number of witnesses.
+     * @param srnd
+     *            The source of random witnesses
+     * @return true if the number is most likely prime given the number of
+     *         witnesses w.
+     */
+    public static boolean checkFermatPrimality(BigInteger n, int w, Random srnd){
+        int filtered = prefilter(n);
+        if (filtered != SmallPrimeFilter.UNKNOWN) {
+            return filtered == SmallPrimeFilter.PRIME;
+        }
         boolean rval = true;
         //Check if it is a carmichael number
-        rval = !Carmichael.NUMBERS.contains(n);
-        SecureRandom srnd = new SecureRandom();
+        rval = !Carmichael.contains(n);
         for (int i = 0; i < w && rval; i++){
             BigInteger a = new BigInteger(n.subtract(TWO_INT).bitCount(), srnd).add(TWO_INT);
             if (a.modPow(n.subtract(ONE_INT), n).compareTo(ONE_INT) != 0){
@@ -427,22 +918,30 @@ public class PrimeUtils {
      * the odd denominator for the Jacobi Symbol</dd>
      * <dd><b>Output </b>: <u>-1</u>, <u>0</u> or <u>1</u></dd>
      * 
+     * <p>
+     * This is the binary algorithm, which needs only shifts, subtractions and
+     * the low bits of <i>a</i> and <i>n</i>. Both are copied once into arrays
+     * of 64 bit limbs that are worked on in place, so apart from that copy
+     * nothing is allocated, and once both fit in a <code>long</code> the rest
+     * is done by {@link #jacobiSymbol(long, long)}.
+     * </p>
+     * 
      * <dl>
      * <dt>Jacobi(<i>a</i>,<i>n</i>) {</dt>
      * <dd><i>j</i> := 1</dd>
      * <dd>while (<i>a</i> not 0) do {</dd>
      * <dl>
-     * <dd>while (<i>a</i> even) do {</dd>
+     * <dd>remove the <i>t</i> factors of 2 from <i>a</i></dd>
+     * <dd>if (<i>t</i> odd and (<i>n</i> = 3 (mod 8) or <i>n</i> = 5 (mod 8))) then <i>j</i> := -<i>j</i></dd>
+     * <dd>if (<i>a</i> &lt; <i>n</i>) then {</dd>
      * <dd>
      * <dl>
-     * <dd><i>a</i> := <i>a</i>/2</dd>
-     * <dd>if (<i>n</i> = 3 (mod 8) or <i>n</i> = 5 (mod 8)) then <i>j</i> := -<i>j</i></dd>
+     * <dd>interchange(<i>a</i>,<i>n</i>)</dd>
+     * <dd>if (<i>a</i> = 3 (mod 4) and <i>n</i> = 3 (mod 4)) then <i>j</i> := -<i>j</i></dd>
      * </dl>
      * </dd>
      * <dd>}</dd>
-     * <dd>interchange(<i>a</i>,<i>n</i>)</dd>
-     * <dd>if (<i>a</i> = 3 (mod 4) and <i>n</i> = 3 (mod 4)) then <i>j</i> := -<i>j</i></dd>
-     * <dd><i>a</i> := <i>a</i> mod <i>n</i></dd>
+     * <dd><i>a</i> := <i>a</i> - <i>n</i></dd>
      * </dl>
      * <dd>}</dd>
      * <dd>if (<i>n</i> = 1) then return (<i>j</i>) else return(0)</dd>
@@ -450,41 +949,159 @@ public class PrimeUtils {
      * </dl>
      * 
      * @param a
-     *            any number greater than or equal to one and less than n
+     *            any number, it is reduced mod n first
      * @param n
-     *            any odd number
+     *            any positive odd number
      * @return the value of the jacobi symbol (a/n)
      */
     public static int jacobiSymbol(BigInteger a, BigInteger n){
+        if (n.signum() <= 0 || !n.testBit(0)) {
+            throw new IllegalArgumentException("The Jacobi symbol needs a positive odd denominator, not " + n);
+        }
+        if (a.signum() < 0 || a.compareTo(n) >= 0) {
+            a = a.mod(n);
+        }
+        if (n.bitLength() < 64) {
+            return jacobiSymbol(a.longValue(), n.longValue());
+        }
+        int limbs = (n.bitLength() + 63) >>> 6;
+        long[] x = MontgomeryContext.toLimbs(a, limbs);
+        long[] y = MontgomeryContext.toLimbs(n, limbs);
+        int xLength = length(x, limbs);
+        int yLength = limbs;
         int j = 1;
-        BigInteger THREE = new BigInteger("3");
-        BigInteger FOUR = new BigInteger("4");
-        BigInteger FIVE = new BigInteger("5");
-        BigInteger EIGHT = new BigInteger("8");
-        BigInteger res;
-        BigInteger temp;
-        while (a.compareTo(ZERO_INT) != 0){
-            while (a.mod(TWO_INT).compareTo(ZERO_INT) == 0){
-                a = a.divide(TWO_INT);
-                res = n.mod(EIGHT);
-                if (res.compareTo(THREE) == 0 || res.compareTo(FIVE) == 0){
-                    j = -1*j;
+        while (xLength != 0) {
+            if (xLength == 1 && yLength == 1 && x[0] >= 0 && y[0] >= 0) {
+                return j * jacobiSymbol(x[0], y[0]);
+            }
+            int t = shiftOutZeros(x, xLength);
+            xLength = length(x, xLength);
+            long n8 = y[0] & 7;
+            if ((t & 1) != 0 && (n8 == 3 || n8 == 5)) {
+                j = -j;
+            }
+            if (compare(x, xLength, y, yLength) < 0) {
+                long[] tmp = x;
+                x = y;
+                y = tmp;
+                int tmpLength = xLength;
+                xLength = yLength;
+                yLength = tmpLength;
+                if ((x[0] & 3) == 3 && (y[0] & 3) == 3) {
+                    j = -j;
                 }
             }
-            temp = a;
-            a = n;
-            n = temp;
-           
-            if (a.mod(FOUR).compareTo(THREE) == 0 && n.mod(FOUR).compareTo(THREE) == 0){
-                j = -1 * j;
+            subtract(x, y, yLength);
+            xLength = length(x, xLength);
+        }
+        return yLength == 1 && y[0] == 1 ? j : 0;
+    }
+
+    /**
+     * The <code>long</code> version of
+     * {@link #jacobiSymbol(BigInteger, BigInteger)}, it never allocates.
+     * 
+     * @param a
+     *            any number, it is reduced mod n first
+     * @param n
+     *            any positive odd number
+     * @return the value of the jacobi symbol (a/n)
+     */
+    public static int jacobiSymbol(long a, long n){
+        if (n <= 0 || (n & 1) == 0) {
+            throw new IllegalArgumentException("The Jacobi symbol needs a positive odd denominator, not " + n);
+        }
+        a %= n;
+        if (a < 0) {
+            a += n;
+        }
+        int j = 1;
+        while (a != 0) {
+            int t = Long.numberOfTrailingZeros(a);
+            a >>>= t;
+            long n8 = n & 7;
+            if ((t & 1) != 0 && (n8 == 3 || n8 == 5)) {
+                j = -j;
             }
-            a = a.mod(n);
+            if (a < n) {
+                long tmp = a;
+                a = n;
+                n = tmp;
+                if ((a & 3) == 3 && (n & 3) == 3) {
+                    j = -j;
+                }
+            }
+            a -= n;
+        }
+        return n == 1 ? j : 0;
+    }
+
+    /**
+     * @return the number of limbs of x below length once the zero limbs at
+     *         the top are dropped
+     */
+    private static int length(long[] x, int length) {
+        while (length > 0 && x[length - 1] == 0) {
+            length--;
+        }
+        return length;
+    }
+
+    /**
+     * Shifts the non zero number in the first length limbs of x right until
+     * it is odd.
+     * 
+     * @return the number of bits shifted out
+     */
+    private static int shiftOutZeros(long[] x, int length) {
+        int words = 0;
+        while (x[words] == 0) {
+            words++;
+        }
+        int bits = Long.numberOfTrailingZeros(x[words]);
+        for (int i = 0; i < length - words; i++) {
+            long low = x[i + words] >>> bits;
+            long high = bits == 0 || i + words + 1 >= length ? 0 : x[i + words + 1] << (64 - bits);
+            x[i] = low | high;
         }
-        
-        if (n.compareTo(ONE_INT) != 0)
-            j = 0;
+        for (int i = length - words; i < length; i++) {
+            x[i] = 0;
+        }
+        return 64 * words + bits;
+    }
 
-        return j;
+    /**
+     * @return the sign of x - y, both unsigned limbs with no zero limbs at the
+     *         top
+     */
+    private static int compare(long[] x, int xLength, long[] y, int yLength) {
+        if (xLength != yLength) {
+            return xLength < yLength ? -1 : 1;
+        }
+        for (int i = xLength - 1; i >= 0; i--) {
+            if (x[i] != y[i]) {
+                return Long.compareUnsigned(x[i], y[i]);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * x := x - y where x is at least y.
+     */
+    private static void subtract(long[] x, long[] y, int yLength) {
+        long borrow = 0;
+        int i = 0;
+        for (; i < yLength; i++) {
+            long xi = x[i];
+            long diff = xi - y[i] - borrow;
+            borrow = Long.compareUnsigned(xi, y[i]) < 0 || (borrow != 0 && xi == y[i]) ? 1 : 0;
+            x[i] = diff;
+        }
+        for (; borrow != 0; i++) {
+            borrow = x[i] == 0 ? 1 : 0;
+            x[i]--;
+        }
     }
     
     /**
@@ -520,14 +1137,31 @@ public class PrimeUtils {
      *         witnesses w.
      */
     public static boolean checkSolovayStrassen(BigInteger n, int w){
+        return checkSolovayStrassen(n, w, new SecureRandom());
+    }
+
+    /**
+     * Same as {@link #checkSolovayStrassen(BigInteger, int)} but takes the
+     * witnesses from <i>srnd</i>.
+     * 
+     * @param n The number to check for primality
+     * @param w The number of witnesses
+     * @param srnd The source of random witnesses
+     * @return true if the number is most likely prime given the number of
+     *         witnesses w.
+     */
+    public static boolean checkSolovayStrassen(BigInteger n, int w, Random srnd){
+        int filtered = prefilter(n);
+        if (filtered != SmallPrimeFilter.UNKNOWN) {
+            return filtered == SmallPrimeFilter.PRIME;
+        }
         boolean rval = true;
         BigInteger n_minus_one =  n.subtract(ONE_INT);
         BigInteger tmp;
-        SecureRandom srnd = new SecureRandom();
         for (int i = 0; i < w && rval; i++){
             BigInteger a = new BigInteger(n.subtract(TWO_INT).bitCount(), srnd).add(TWO_INT);
             int x = jacobiSymbol(a, n);
-            BigInteger X = new BigInteger(x+"");
+            BigInteger X = BigInteger.valueOf(x);
             tmp = a.modPow(n_minus_one.divide(TWO_INT),n);
             if (x == 0 || (tmp.compareTo(X) != 0) && (tmp.compareTo(n_minus_one) != 0)){
                 rval = false;
@@ -535,4 +1169,184 @@ public class PrimeUtils {
         }
         return rval;
     }
+
+    /**
+     * <p>
+     * The Baillie-PSW primality test. It is a strong probable prime test to
+     * base 2 followed by a strong Lucas probable prime test. No composite
+     * number is known to pass both, and the cost is about three modular
+     * exponentiations regardless of the size of <i>n</i>.
+     * </p>
+     * 
+     * Read more about it here <br>
+     * 
+     * <a href="http://en.wikipedia.org/wiki/Baillie-PSW_primality_test">
+     * http://en.wikipedia.org/wiki/Baillie-PSW_primality_test </a><br>
+     * 
+     * <dd><b>Input </b>: <i>n </i>: a value to test for primality</dd>
+     * <dd><b>Output </b>: <u>composite </u> if <i>n </i> is composite,
+     * otherwise <u>probably prime </u></dd>
+     * 
+     * <dd>if <i>n</i> is not a strong probable prime to base 2 then return <u>composite</u></dd>
+     * <dd>if <i>n</i> is a perfect square then return <u>composite</u></dd>
+     * <dd>find the first <i>D</i> in 5, -7, 9, -11, 13, ... with (<i>D</i>/<i>n</i>) = -1</dd>
+     * <dd>if <i>n</i> is not a strong Lucas probable prime with <i>P</i> = 1 and
+     * <i>Q</i> = (1 - <i>D</i>)/4 then return <u>composite</u></dd>
+     * <dd>return <u>probably prime </u></dd>
+     * 
+     * @param n The number to check for primality
+     * @return true if the number is a Baillie-PSW probable prime
+     */
+    public static boolean checkBailliePSW(BigInteger n) {
+        int filtered = prefilter(n);
+        if (filtered != SmallPrimeFilter.UNKNOWN) {
+            return filtered == SmallPrimeFilter.PRIME;
+        }
+        if (n.bitLength() < 64) {
+            return LongPrimality.isPrime(n.longValue());
+        }
+        if (!n.testBit(0)) {
+            return false;
+        }
+        if (!checkStrongProbablePrime(n, TWO_INT)) {
+            return false;
+        }
+        if (IntegerRoots.isPerfectSquare(n)) {
+            return false;
+        }
+
+        // Selfridge's method A for the Lucas parameters
+        long d = 5;
+        while (true) {
+            BigInteger bigD = BigInteger.valueOf(d);
+            int j = jacobiSymbol(bigD.mod(n), n);
+            if (j == -1) {
+                break;
+            }
+            if (j == 0 && bigD.abs().compareTo(n) != 0) {
+                return false;
+            }
+            d = d > 0 ? -(d + 2) : -(d - 2);
+        }
+        return checkStrongLucas(n, BigInteger.valueOf(d), BigInteger.valueOf((1 - d) / 4));
+    }
+
+    /**
+     * <p>
+     * One round of the Miller-Rabin test with the witness <i>a</i>.
+     * </p>
+     * 
+     * @param n
+     *            an odd number greater than <i>a</i>
+     * @param a
+     *            the witness
+     * @return false if <i>a</i> proves that <i>n</i> is composite
+     */
+    static boolean checkStrongProbablePrime(BigInteger n, BigInteger a) {
+        BigInteger nMinusOne = n.subtract(ONE_INT);
+        int s = nMinusOne.getLowestSetBit();
+        return strongProbablePrime(n, nMinusOne, nMinusOne.shiftRight(s), s, a, squaringContext(n, s));
+    }
+
+    /**
+     * One round of the Miller-Rabin test where n-1 = 2<sup>s</sup> * r has
+     * already been split. The exponentiation is left to modPow and the
+     * squarings after it are done in the Montgomery context of n when there
+     * is one.
+     * 
+     * @return false if <i>a</i> proves that <i>n</i> is composite
+     */
+    static private boolean strongProbablePrime(BigInteger n, BigInteger nMinusOne, BigInteger r, int s,
+            BigInteger a, MontgomeryContext context) {
+        BigInteger y = a.modPow(r, n);
+        if (y.equals(ONE_INT) || y.equals(nMinusOne)) {
+            return true;
+        }
+        if (context != null) {
+            return context.squaresToMinusOne(y, s);
+        }
+        for (int j = 1; j < s; j++) {
+            y = y.multiply(y).mod(n);
+            if (y.equals(nMinusOne)) {
+                return true;
+            }
+            if (y.equals(ONE_INT)) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return a Montgomery context for the squarings of the Miller-Rabin
+     *         rounds on n, or null if there are none or n is too large
+     */
+    static private MontgomeryContext squaringContext(BigInteger n, int s) {
+        if (s < 2 || n.bitLength() > MontgomeryContext.MAX_BITS) {
+            return null;
+        }
+        return new MontgomeryContext(n);
+    }
+
+    /**
+     * <p>
+     * The strong Lucas probable prime test with parameters <i>P</i> = 1 and
+     * <i>Q</i>. Write <i>n</i>+1 = 2<sup><i>s</i></sup> * <i>d</i> with
+     * <i>d</i> odd, then <i>n</i> passes if U<sub><i>d</i></sub> = 0 or
+     * V<sub><i>d</i>2<sup><i>r</i></sup></sub> = 0 (mod <i>n</i>) for some
+     * 0 &lt;= <i>r</i> &lt; <i>s</i>.
+     * </p>
+     * 
+     * @param n
+     *            the odd number in question
+     * @param d
+     *            the discriminant P^2 - 4Q with (D/n) = -1
+     * @param q
+     *            the parameter Q
+     * @return true if n is a strong Lucas probable prime
+     */
+    static boolean checkStrongLucas(BigInteger n, BigInteger d, BigInteger q) {
+        BigInteger nPlusOne = n.add(ONE_INT);
+        int s = nPlusOne.getLowestSetBit();
+        BigInteger k = nPlusOne.shiftRight(s);
+        BigInteger dMod = d.mod(n);
+        BigInteger qMod = q.mod(n);
+
+        // Start with U_1 = 1, V_1 = P = 1 and walk the bits of k
+        BigInteger u = ONE_INT;
+        BigInteger v = ONE_INT;
+        BigInteger qk = qMod;
+        for (int i = k.bitLength() - 2; i >= 0; i--) {
+            u = u.multiply(v).mod(n);
+            v = v.multiply(v).subtract(qk.shiftLeft(1)).mod(n);
+            qk = qk.multiply(qk).mod(n);
+            if (k.testBit(i)) {
+                BigInteger newU = halve(u.add(v), n);
+                v = halve(dMod.multiply(u).add(v), n);
+                u = newU;
+                qk = qk.multiply(qMod).mod(n);
+            }
+        }
+        if (u.signum() == 0 || v.signum() == 0) {
+            return true;
+        }
+        for (int r = 1; r < s; r++) {
+            v = v.multiply(v).subtract(qk.shiftLeft(1)).mod(n);
+            if (v.signum() == 0) {
+                return true;
+            }
+            qk = qk.multiply(qk).mod(n);
+        }
+        return false;
+    }
+
+    /**
+     * @return x/2 mod n for an odd modulus n
+     */
+    private static BigInteger halve(BigInteger x, BigInteger n) {
+        if (x.testBit(0)) {
+            x = x.add(n);
+        }
+        return x.shiftRight(1).mod(n);
+    }
 }
@@ -0,0 +1,228 @@
+package com.ronhorner.primes;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * <p>
+ * Generates random probable primes of a given number of bits or decimal
+ * digits.
+ * </p>
+ *
+ * <p>
+ * A random start is drawn from a SecureRandom and the smallest prime at or
+ * above it is found with a {@link PrimeSearch}, which sieves a window of
+ * candidates around the start by small primes and only tests the survivors.
+ * If the search runs past the end of the requested size a new start is drawn.
+ * </p>
+ *
+ * <p>
+ * This is the incremental search used by most key generators and the primes
+ * it returns are close to, but not exactly, uniform. Each prime is returned
+ * with probability proportional to the gap below it, so a prime that follows
+ * a long gap is more likely than one that follows a short gap. No prime is
+ * excluded and for keys the difference is harmless, but the output should
+ * not be used where an exactly uniform choice is required.
+ * </p>
+ *
+ * <p>
+ * With an executor a single prime is found with the speculative parallel
+ * search, and many primes are found by giving each one to its own worker,
+ * which is the better use of the cores when throughput matters.
+ * </p>
+ *
+ * @author Ron Horner
+ */
+public class RandomPrimeGenerator {
+
+    /** The test run on the candidates left by the sieve */
+    private final PrimalityTest test;
+
+    /** Runs the searches, or null to search on the calling thread */
+    private final ExecutorService executor;
+
+    /** The number of threads the executor has */
+    private final int parallelism;
+
+    /** One random source per thread */
+    private final ThreadLocal<SecureRandom> random = ThreadLocal.withInitial(SecureRandom::new);
+
+    /** One single threaded search per thread, for the many primes mode */
+    private final ThreadLocal<PrimeSearch> searches;
+
+    /**
+     * Creates a generator that runs on the calling thread.
+     *
+     * @param test
+     *            the test run on the candidates
+     */
+    public RandomPrimeGenerator(PrimalityTest test) {
+        this(test, null, 1);
+    }
+
+    /**
+     * Creates a generator.
+     *
+     * @param test
+     *            the test run on the candidates
+     * @param executor
+     *            runs the searches, it is not shut down by this class, or
+     *            null to search on the calling thread
+     * @param parallelism
+     *            the number of threads the executor has
+     */
+    public RandomPrimeGenerator(final PrimalityTest test, ExecutorService executor, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Invalid parallelism " + parallelism);
+        }
+        this.test = test;
+        this.executor = executor;
+        this.parallelism = parallelism;
+        this.searches = ThreadLocal.withInitial(() -> new PrimeSearch(test));
+    }
+
+    /**
+     * Generates a random probable prime of exactly <i>bits</i> bits.
+     *
+     * @param bits
+     *            the bit length, at least two
+     * @return a prime p with 2^(bits-1) &lt;= p &lt; 2^bits
+     */
+    public BigInteger generate(int bits) {
+        return generate(lowestOfBits(bits), BigInteger.ONE.shiftLeft(bits), parallelSearch());
+    }
+
+    /**
+     * Generates <i>count</i> random probable primes of exactly <i>bits</i>
+     * bits, each on its own worker.
+     *
+     * @param bits
+     *            the bit length, at least two
+     * @param count
+     *            the number of primes
+     * @return the primes
+     */
+    public BigInteger[] generate(int bits, int count) {
+        return generate(lowestOfBits(bits), BigInteger.ONE.shiftLeft(bits), count);
+    }
+
+    /**
+     * Generates a random probable prime of exactly <i>digits</i> decimal
+     * digits.
+     *
+     * @param digits
+     *            the number of digits, at least one
+     * @return a prime p with 10^(digits-1) &lt;= p &lt; 10^digits
+     */
+    public BigInteger generateDigits(int digits) {
+        return generate(lowestOfDigits(digits), BigInteger.TEN.pow(digits), parallelSearch());
+    }
+
+    /**
+     * Generates <i>count</i> random probable primes of exactly <i>digits</i>
+     * decimal digits, each on its own worker.
+     *
+     * @param digits
+     *            the number of digits, at least one
+     * @param count
+     *            the number of primes
+     * @return the primes
+     */
+    public BigInteger[] generateDigits(int digits, int count) {
+        return generate(lowestOfDigits(digits), BigInteger.TEN.pow(digits), count);
+    }
+
+    /**
+     * Finds <i>count</i> primes in [low, high), one search per prime.
+     */
+    private BigInteger[] generate(final BigInteger low, final BigInteger high, int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Invalid count " + count);
+        }
+        BigInteger[] rval = new BigInteger[count];
+        if (executor == null) {
+            for (int i = 0; i < count; i++) {
+                rval[i] = generate(low, high, searches.get());
+            }
+            return rval;
+        }
+        ArrayList<Future<BigInteger>> tasks = new ArrayList<Future<BigInteger>>(count);
+        for (int i = 0; i < count; i++) {
+            tasks.add(executor.submit(new Callable<BigInteger>() {
+                public BigInteger call() {
+                    return generate(low, high, searches.get());
+                }
+            }));
+        }
+        try {
+            for (int i = 0; i < count; i++) {
+                rval[i] = tasks.get(i).get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while generating primes", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("A prime search failed", e.getCause());
+        } finally {
+            for (Future<BigInteger> task : tasks) {
+                task.cancel(true);
+            }
+        }
+        return rval;
+    }
+
+    /**
+     * Draws random starts in [low, high) until the next prime after one is
+     * still below high.
+     */
+    private BigInteger generate(BigInteger low, BigInteger high, PrimeSearch search) {
+        BigInteger range = high.subtract(low);
+        SecureRandom rnd = random.get();
+        while (true) {
+            BigInteger offset;
+            do {
+                offset = new BigInteger(range.bitLength(), rnd);
+            } while (offset.compareTo(range) >= 0);
+            BigInteger p = search.next(low.add(offset));
+            if (p.compareTo(high) < 0) {
+                return p;
+            }
+        }
+    }
+
+    /**
+     * @return the search for a single prime, speculative when there is an
+     *         executor
+     */
+    private PrimeSearch parallelSearch() {
+        if (executor == null) {
+            return searches.get();
+        }
+        return new PrimeSearch(test, PrimeSearch.DEFAULT_SIEVE_PRIMES, executor, parallelism);
+    }
+
+    /**
+     * @return 2^(bits-1)
+     */
+    private static BigInteger lowestOfBits(int bits) {
+        if (bits < 2) {
+            throw new IllegalArgumentException("A prime has at least two bits, not " + bits);
+        }
+        return BigInteger.ONE.shiftLeft(bits - 1);
+    }
+
+    /**
+     * @return 10^(digits-1)
+     */
+    private static BigInteger lowestOfDigits(int digits) {
+        if (digits < 1) {
+            throw new IllegalArgumentException("A prime has at least one digit, not " + digits);
+        }
+        return BigInteger.TEN.pow(digits - 1);
+    }
+}
@@ -0,0 +1,334 @@
+package com.ronhorner.primes;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * <p>
+ * A segmented Sieve of Eratosthenes for enumerating every prime in an
+ * interval [<i>lo</i>, <i>hi</i>].
+ * </p>
+ *
+ * <p>
+ * Only the odd numbers are stored, one bit each, in a <code>long[]</code>
+ * segment that is sized to fit in the processor cache. The sieving primes up
+ * to the square root of <i>hi</i> are found once and every segment is crossed
+ * off with them in turn, so the memory used is the segment plus the sieving
+ * primes and does not grow with the length of the interval.
+ * </p>
+ *
+ * <p>
+ * <a href="http://en.wikipedia.org/wiki/Sieve_of_Eratosthenes#Segmented_sieve">
+ * http://en.wikipedia.org/wiki/Sieve_of_Eratosthenes#Segmented_sieve </a>
+ * </p>
+ *
+ * @author Ron Horner
+ */
+public class SegmentedSieve {
+
+    /** The default segment size in bytes, the size of a typical L1 data cache */
+    public static final int DEFAULT_SEGMENT_BYTES = 32 * 1024;
+
+    /**
+     * The largest upper bound allowed, its sieving primes still fit in an int.
+     * Near this bound the base sieve for the primes up to 2<sup>31</sup> takes
+     * 128 MB while it runs, and the 105 million sieving primes it leaves
+     * take another 420 MB for as long as the sieve is kept.
+     */
+    public static final long MAX_BOUND = 1L << 62;
+
+    /** The lower bound of the interval */
+    private final long lo;
+
+    /** The upper bound of the interval */
+    private final long hi;
+
+    /** The number of odd numbers held in one segment */
+    private final int segmentBits;
+
+    /** The odd sieving primes up to the square root of hi */
+    private final int[] sievingPrimes;
+
+    /**
+     * Creates a sieve over [lo, hi] with the default segment size.
+     *
+     * @param lo
+     *            the lower bound of the interval
+     * @param hi
+     *            the upper bound of the interval
+     */
+    public SegmentedSieve(long lo, long hi) {
+        this(lo, hi, DEFAULT_SEGMENT_BYTES);
+    }
+
+    /**
+     * Creates a sieve over [lo, hi].
+     *
+     * @param lo
+     *            the lower bound of the interval
+     * @param hi
+     *            the upper bound of the interval, at most {@link #MAX_BOUND}
+     * @param segmentBytes
+     *            the size of a segment in bytes
+     */
+    public SegmentedSieve(long lo, long hi, int segmentBytes) {
+        if (lo < 0 || hi > MAX_BOUND || segmentBytes < 8) {
+            throw new IllegalArgumentException("Invalid sieve range [" + lo + ", " + hi + "]");
+        }
+        this.lo = lo;
+        this.hi = hi;
+        this.segmentBits = (segmentBytes / 8) * 64;
+        this.sievingPrimes = oddPrimesUpTo((int) Math.min(Integer.MAX_VALUE, IntegerRoots.isqrt(hi)));
+    }
+
+    /**
+     * @return the lower bound of the interval
+     */
+    public long getLow() {
+        return lo;
+    }
+
+    /**
+     * @return the upper bound of the interval
+     */
+    public long getHigh() {
+        return hi;
+    }
+
+    /**
+     * Passes every prime in the interval to <i>action</i> in increasing order.
+     *
+     * @param action
+     *            receives each prime
+     * @return the number of primes found
+     */
+    public long forEachPrime(LongConsumer action) {
+        return sieve(lo, hi, action);
+    }
+
+    /**
+     * Counts the primes in the interval without producing them.
+     *
+     * @return the number of primes in [lo, hi]
+     */
+    public long count() {
+        return sieve(lo, hi, null);
+    }
+
+    /**
+     * <p>
+     * Sieves the sub interval [from, to] of this sieve one segment at a time.
+     * The position of the next multiple of every sieving prime is carried from
+     * one segment to the next, so the divisions to find the first multiple are
+     * only done once per call.
+     * </p>
+     *
+     * @param from
+     *            the lower bound of the sub interval
+     * @param to
+     *            the upper bound of the sub interval, at most hi
+     * @param action
+     *            receives each prime, or null to only count them
+     * @return the number of primes in [from, to]
+     */
+    long sieve(long from, long to, LongConsumer action) {
+        return sieve(from, to, action, null, null);
+    }
+
+    /**
+     * <p>
+     * Counts the primes in the sub interval [from, to] of this sieve, and
+     * for every point in that interval the primes in [from, point], in one
+     * pass.
+     * </p>
+     *
+     * @param from
+     *            the lower bound of the sub interval
+     * @param to
+     *            the upper bound of the sub interval, at most hi
+     * @param points
+     *            the points in increasing order, those outside [from, to]
+     *            are left alone
+     * @param counts
+     *            receives the count for each point inside [from, to]
+     * @return the number of primes in [from, to]
+     */
+    long countAt(long from, long to, long[] points, long[] counts) {
+        return sieve(from, to, null, points, counts);
+    }
+
+    /**
+     * The sieve behind {@link #sieve(long, long, LongConsumer)} and
+     * {@link #countAt(long, long, long[], long[])}, points may be null.
+     */
+    private long sieve(long from, long to, LongConsumer action, long[] points, long[] counts) {
+        long count = 0;
+        int point = 0;
+        if (points != null) {
+            while (point < points.length && points[point] < from) {
+                point++;
+            }
+        }
+        if (to < 2 || from > to) {
+            return finish(points, point, to, counts, count);
+        }
+        if (from <= 2) {
+            count++;
+            if (action != null) {
+                action.accept(2);
+            }
+        }
+        long start = Math.max(3, from) | 1;
+        if (points != null) {
+            for (; point < points.length && points[point] < start && points[point] <= to; point++) {
+                counts[point] = points[point] < 2 ? 0 : count;
+            }
+        }
+        if (start > to) {
+            return finish(points, point, to, counts, count);
+        }
+
+        long[] bits = new long[segmentBits / 64];
+        int numPrimes = 0;
+        while (numPrimes < sievingPrimes.length && (long) sievingPrimes[numPrimes] * sievingPrimes[numPrimes] <= to) {
+            numPrimes++;
+        }
+
+        // Index of the next odd multiple of each prime, relative to the segment
+        long[] next = new long[numPrimes];
+        for (int i = 0; i < numPrimes; i++) {
+            long p = sievingPrimes[i];
+            long m = Math.max(p * p, ((start + p - 1) / p) * p);
+            if ((m & 1) == 0) {
+                m += p;
+            }
+            next[i] = (m - start) >>> 1;
+        }
+
+        for (long segLow = start; segLow <= to; segLow += 2L * segmentBits) {
+            long segHigh = Math.min(to, segLow + 2L * (segmentBits - 1));
+            int length = (int) ((segHigh - segLow) >>> 1) + 1;
+            Arrays.fill(bits, 0L);
+
+            for (int i = 0; i < numPrimes; i++) {
+                long j = next[i];
+                int p = sievingPrimes[i];
+                for (; j < length; j += p) {
+                    bits[(int) (j >>> 6)] |= 1L << j;
+                }
+                next[i] = j - segmentBits;
+            }
+
+            if (points != null) {
+                // The primes below each point are counted on from the one before
+                int word = 0;
+                long below = count;
+                for (; point < points.length && points[point] <= segHigh; point++) {
+                    if (points[point] < segLow) {
+                        counts[point] = count;
+                        continue;
+                    }
+                    int i = (int) ((points[point] - segLow) >>> 1);
+                    for (; word < (i >>> 6); word++) {
+                        below += Long.bitCount(~bits[word]);
+                    }
+                    counts[point] = below + Long.bitCount(~bits[word] & (-1L >>> (63 - (i & 63))));
+                }
+            }
+            count += collect(bits, length, segLow, action);
+        }
+        return finish(points, point, to, counts, count);
+    }
+
+    /**
+     * Gives the points left in [from, to] the whole count.
+     *
+     * @return count
+     */
+    private static long finish(long[] points, int point, long to, long[] counts, long count) {
+        if (points != null) {
+            while (point < points.length && points[point] <= to) {
+                counts[point++] = count;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Reports the unmarked bits of a sieved segment.
+     *
+     * @param bits
+     *            the segment, a set bit marks a composite
+     * @param length
+     *            the number of valid bits in the segment
+     * @param segLow
+     *            the odd number held in bit zero
+     * @param action
+     *            receives each prime, or null to only count them
+     * @return the number of primes in the segment
+     */
+    static long collect(long[] bits, int length, long segLow, LongConsumer action) {
+        long count = 0;
+        int words = (length + 63) >>> 6;
+        for (int w = 0; w < words; w++) {
+            long free = ~bits[w];
+            if (w == words - 1 && (length & 63) != 0) {
+                free &= (1L << length) - 1;
+            }
+            if (action == null) {
+                count += Long.bitCount(free);
+            } else {
+                while (free != 0) {
+                    int bit = Long.numberOfTrailingZeros(free);
+                    action.accept(segLow + 2L * ((w << 6) + bit));
+                    free &= free - 1;
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * <p>
+     * Finds all of the odd primes up to <i>limit</i> with the plain Sieve of
+     * Eratosthenes on the odd numbers.
+     * </p>
+     *
+     * @param limit
+     *            the largest number to consider
+     * @return the odd primes less than or equal to limit in increasing order
+     */
+    static int[] oddPrimesUpTo(int limit) {
+        if (limit < 3) {
+            return new int[0];
+        }
+        int size = (limit - 1) / 2; // bit i holds 2i+3
+        long[] composite = new long[(size + 63) / 64];
+        for (long i = 0; ; i++) {
+            long p = 2 * i + 3;
+            if (p * p > limit) {
+                break;
+            }
+            if ((composite[(int) (i >>> 6)] & (1L << i)) == 0) {
+                for (long j = (p * p - 3) / 2; j < size; j += p) {
+                    composite[(int) (j >>> 6)] |= 1L << j;
+                }
+            }
+        }
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if ((composite[i >>> 6] & (1L << i)) == 0) {
+                count++;
+            }
+        }
+        int[] primes = new int[count];
+        count = 0;
+        for (int i = 0; i < size; i++) {
+            if ((composite[i >>> 6] & (1L << i)) == 0) {
+                primes[count++] = 2 * i + 3;
+            }
+        }
+        return primes;
+    }
+}
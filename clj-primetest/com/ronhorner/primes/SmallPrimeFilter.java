@@ -0,0 +1,206 @@
+package com.ronhorner.primes;
+
+import java.math.BigInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>
+ * A cheap first stage for the primality tests that looks for a factor among
+ * the first <i>k</i> primes.
+ * </p>
+ *
+ * <p>
+ * More than half of random odd numbers, 1 - (2/3)(4/5)(6/7) or about 54%,
+ * are divisible by 3, 5 or 7, so rejecting them with a few word sized
+ * remainders is much cheaper than even one modular exponentiation. The primes are packed into groups whose product
+ * fits in a <code>long</code>. For a big number one remainder is taken per
+ * group and the primes of the group are then checked against that long
+ * residue, numbers that already fit in a long are divided directly.
+ * </p>
+ *
+ * <p>
+ * The filter keeps count of how many candidates it has seen and how many it
+ * has eliminated. It is safe to share between threads, and the counts are
+ * kept in <code>LongAdder</code>s so that the worker threads sharing the
+ * default filter do not all contend on one counter.
+ * </p>
+ *
+ * @author Ron Horner
+ */
+public class SmallPrimeFilter {
+
+    /** The default number of primes to divide by */
+    public static final int DEFAULT_PRIMES = 64;
+
+    /** The number is not prime */
+    public static final int COMPOSITE = 0;
+
+    /** The number is prime, it is one of the primes or smaller than the square of the largest */
+    public static final int PRIME = 1;
+
+    /** The number has no small factor and must be given to a real test */
+    public static final int UNKNOWN = 2;
+
+    /** The first k primes */
+    private final int[] primes;
+
+    /** The product of each group of primes */
+    private final BigInteger[] groupProducts;
+
+    /** The index in primes where each group starts, with an extra entry for the end */
+    private final int[] groupStarts;
+
+    /** The square of the largest prime, anything smaller with no factor is prime */
+    private final long limit;
+
+    /** The number of candidates passed to {@link #classify(BigInteger)} */
+    private final LongAdder candidates = new LongAdder();
+
+    /** The number of candidates found to be composite */
+    private final LongAdder eliminated = new LongAdder();
+
+    /**
+     * Creates a filter with the first {@link #DEFAULT_PRIMES} primes.
+     */
+    public SmallPrimeFilter() {
+        this(DEFAULT_PRIMES);
+    }
+
+    /**
+     * Creates a filter with the first <i>k</i> primes.
+     *
+     * @param k
+     *            the number of primes to divide by, at least one
+     */
+    public SmallPrimeFilter(int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("The filter needs at least one prime, not " + k);
+        }
+        primes = firstPrimes(k);
+
+        int[] starts = new int[k + 1];
+        int groups = 0;
+        long product = 1;
+        for (int i = 0; i < k; i++) {
+            if (i == 0 || product > Long.MAX_VALUE / primes[i]) {
+                starts[groups++] = i;
+                product = 1;
+            }
+            product *= primes[i];
+        }
+        starts[groups] = k;
+        groupStarts = new int[groups + 1];
+        System.arraycopy(starts, 0, groupStarts, 0, groups + 1);
+        groupProducts = new BigInteger[groups];
+        for (int g = 0; g < groups; g++) {
+            product = 1;
+            for (int i = groupStarts[g]; i < groupStarts[g + 1]; i++) {
+                product *= primes[i];
+            }
+            groupProducts[g] = BigInteger.valueOf(product);
+        }
+        long largest = primes[k - 1];
+        limit = largest * largest;
+    }
+
+    /**
+     * @return the number of primes this filter divides by
+     */
+    public int getPrimeCount() {
+        return primes.length;
+    }
+
+    /**
+     * <p>
+     * Decides if <i>n</i> has a factor among the small primes.
+     * </p>
+     *
+     * @param n
+     *            the number in question
+     * @return {@link #COMPOSITE} if n is not prime, {@link #PRIME} if the
+     *         small primes are enough to prove n prime, otherwise
+     *         {@link #UNKNOWN}
+     */
+    public int classify(BigInteger n) {
+        candidates.increment();
+        int rval;
+        if (n.signum() <= 0 || n.equals(BigInteger.ONE)) {
+            rval = COMPOSITE;
+        } else if (n.bitLength() < 64) {
+            rval = classify(n.longValue());
+        } else {
+            rval = UNKNOWN;
+            for (int g = 0; g < groupProducts.length && rval == UNKNOWN; g++) {
+                long residue = n.mod(groupProducts[g]).longValue();
+                for (int i = groupStarts[g]; i < groupStarts[g + 1]; i++) {
+                    if (residue % primes[i] == 0) {
+                        rval = COMPOSITE;
+                        break;
+                    }
+                }
+            }
+        }
+        if (rval == COMPOSITE) {
+            eliminated.increment();
+        }
+        return rval;
+    }
+
+    /**
+     * The long version of {@link #classify(BigInteger)}, it does not update
+     * the counters.
+     */
+    private int classify(long n) {
+        for (int i = 0; i < primes.length; i++) {
+            if (n % primes[i] == 0) {
+                return n == primes[i] ? PRIME : COMPOSITE;
+            }
+        }
+        return n < limit ? PRIME : UNKNOWN;
+    }
+
+    /**
+     * @return the number of candidates this filter has classified
+     */
+    public long getCandidates() {
+        return candidates.sum();
+    }
+
+    /**
+     * @return the number of candidates this filter has found to be composite
+     */
+    public long getEliminated() {
+        return eliminated.sum();
+    }
+
+    /**
+     * Sets both counters back to zero.
+     */
+    public void resetCounters() {
+        candidates.reset();
+        eliminated.reset();
+    }
+
+    /**
+     * @return the number of candidates eliminated out of the number seen
+     */
+    public String toString() {
+        return "Prefilter eliminated " + getEliminated() + " of " + getCandidates()
+                + " candidates using " + primes.length + " primes";
+    }
+
+    /**
+     * @param k
+     *            how many primes to return
+     * @return the first k primes
+     */
+    static int[] firstPrimes(int k) {
+        // The k-th prime is less than k(ln k + ln ln k) for k >= 6
+        int bound = k < 6 ? 13 : (int) (k * (Math.log(k) + Math.log(Math.log(k)))) + 1;
+        int[] odd = SegmentedSieve.oddPrimesUpTo(bound);
+        int[] rval = new int[k];
+        rval[0] = 2;
+        System.arraycopy(odd, 0, rval, 1, k - 1);
+        return rval;
+    }
+}
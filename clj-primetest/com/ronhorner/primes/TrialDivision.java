@@ -0,0 +1,214 @@
+package com.ronhorner.primes;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * A deterministic brute force primality test by trial division.
+ * </p>
+ *
+ * <p>
+ * The divisors are generated with a mod 210 wheel, which skips every multiple
+ * of 2, 3, 5 and 7 and leaves only 48 of every 210 numbers to try. All of the
+ * division is done on primitive longs: a number below 2<sup>63</sup> is
+ * divided directly, a larger one is cut into chunks small enough that the
+ * remainder can be carried from chunk to chunk without overflowing. This works
+ * while the square root of <i>n</i> fits in {@link #MAX_DIVISOR_BITS} bits,
+ * which is every <i>n</i> below about 10<sup>28</sup>.
+ * </p>
+ *
+ * <p>
+ * The divisor range is handed out in blocks to a pool of threads. As soon as
+ * any thread finds a factor the others stop at the end of their current
+ * block.
+ * </p>
+ *
+ * @author Ron Horner
+ */
+public class TrialDivision {
+
+    /** The largest square root, in bits, that the long division can handle */
+    public static final int MAX_DIVISOR_BITS = 47;
+
+    /** The size of the wheel, 2*3*5*7 */
+    private static final int WHEEL = 210;
+
+    /** The gaps between the numbers coprime to 210, starting from 11 */
+    private static final int[] GAPS;
+
+    /** The number of wheel turns in one block of work */
+    private static final long BLOCK_TURNS = 1 << 12;
+
+    static {
+        int[] coprime = new int[48];
+        int count = 0;
+        for (int i = 11; i < 11 + WHEEL; i++) {
+            if (i % 2 != 0 && i % 3 != 0 && i % 5 != 0 && i % 7 != 0) {
+                coprime[count++] = i;
+            }
+        }
+        GAPS = new int[48];
+        for (int i = 0; i < 48; i++) {
+            GAPS[i] = (i + 1 < 48 ? coprime[i + 1] : coprime[0] + WHEEL) - coprime[i];
+        }
+    }
+
+    /** The number of threads to divide with */
+    private final int threads;
+
+    /**
+     * Creates a trial divider that uses one thread per processor.
+     */
+    public TrialDivision() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a trial divider.
+     *
+     * @param threads
+     *            the number of threads to divide with
+     */
+    public TrialDivision(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Invalid thread count " + threads);
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * @param n
+     *            the number in question
+     * @return true if n is small enough for {@link #findFactor(BigInteger)}
+     */
+    public static boolean supports(BigInteger n) {
+        return IntegerRoots.isqrt(n).bitLength() <= MAX_DIVISOR_BITS;
+    }
+
+    /**
+     * <p>
+     * Searches for a factor of <i>n</i> between 2 and the square root of
+     * <i>n</i>. When several threads are used the factor returned is not
+     * necessarily the smallest one.
+     * </p>
+     *
+     * @param n
+     *            a number greater than one with {@link #supports(BigInteger)}
+     * @return a proper factor of n, or 0 if n is prime
+     */
+    public long findFactor(BigInteger n) {
+        if (n.compareTo(BigInteger.ONE) <= 0 || !supports(n)) {
+            throw new IllegalArgumentException(n + " is out of range for trial division");
+        }
+        final Divider divider = new Divider(n);
+        long[] wheelPrimes = { 2, 3, 5, 7 };
+        for (int i = 0; i < wheelPrimes.length; i++) {
+            if (divider.divides(wheelPrimes[i])) {
+                return n.equals(BigInteger.valueOf(wheelPrimes[i])) ? 0 : wheelPrimes[i];
+            }
+        }
+        final long sqrt = IntegerRoots.isqrt(n).longValue();
+        final long turns = sqrt < 11 ? 0 : (sqrt - 11) / WHEEL + 1;
+        final AtomicLong nextTurn = new AtomicLong();
+        final AtomicLong found = new AtomicLong();
+
+        if (threads == 1 || turns <= BLOCK_TURNS) {
+            searchBlocks(divider, sqrt, turns, nextTurn, found);
+            return found.get();
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            ArrayList<Future<?>> workers = new ArrayList<Future<?>>();
+            for (int i = 0; i < threads; i++) {
+                workers.add(pool.submit(new Runnable() {
+                    public void run() {
+                        searchBlocks(divider, sqrt, turns, nextTurn, found);
+                    }
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("Trial division failed", e);
+        } finally {
+            pool.shutdownNow();
+        }
+        return found.get();
+    }
+
+    /**
+     * <p>
+     * Takes blocks of wheel turns until the divisors pass the square root or
+     * some thread has found a factor.
+     * </p>
+     */
+    private static void searchBlocks(Divider divider, long sqrt, long turns, AtomicLong nextTurn, AtomicLong found) {
+        while (found.get() == 0) {
+            long first = nextTurn.getAndAdd(BLOCK_TURNS);
+            if (first >= turns) {
+                return;
+            }
+            long last = Math.min(turns, first + BLOCK_TURNS);
+            long d = 11 + first * WHEEL;
+            long end = Math.min(sqrt, 11 + last * WHEEL - 1);
+            for (int g = 0; d <= end; g = g == 47 ? 0 : g + 1) {
+                if (divider.divides(d)) {
+                    found.compareAndSet(0, d);
+                    return;
+                }
+                d += GAPS[g];
+            }
+        }
+    }
+
+    /**
+     * Computes remainders of one fixed number with primitive longs.
+     */
+    private static class Divider {
+        /** The number when it fits in a long, otherwise -1 */
+        private final long small;
+
+        /** The chunks of the number, most significant first */
+        private final long[] chunks;
+
+        /** The width of every chunk after the first */
+        private final int width;
+
+        Divider(BigInteger n) {
+            if (n.bitLength() < 64) {
+                small = n.longValue();
+                chunks = null;
+                width = 0;
+            } else {
+                // The remainder is below the divisor, so shifting it left by
+                // width bits must stay under 2^63
+                small = -1;
+                width = 62 - IntegerRoots.isqrt(n).bitLength();
+                int count = (n.bitLength() + width - 1) / width;
+                chunks = new long[count];
+                long mask = (1L << width) - 1;
+                for (int i = 0; i < count; i++) {
+                    chunks[count - 1 - i] = n.shiftRight(i * width).longValue() & mask;
+                }
+            }
+        }
+
+        boolean divides(long d) {
+            if (chunks == null) {
+                return small % d == 0;
+            }
+            long r = 0;
+            for (int i = 0; i < chunks.length; i++) {
+                r = ((r << width) | chunks[i]) % d;
+            }
+            return r == 0;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.ronhorner.primes;
+
+import java.math.BigInteger;
+
+/**
+ * <p>
+ * Williams' p+1 method, which finds a prime factor p of n when p+1 is smooth.
+ * </p>
+ *
+ * <p>
+ * For v = b + b<sup>-1</sup> with v<sup>2</sup> - 4 not a square mod p, b
+ * lives in the field of p<sup>2</sup> elements and b<sup>p+1</sup> = 1, so
+ * V<sub>E</sub>(v) = 2 mod p whenever p+1 divides E. Stage 1 applies every
+ * prime power up to B1 from a {@link PrimeIterator} in turn with the Lucas
+ * ladder of {@link LucasChain} and takes gcd(V<sub>E</sub> - 2, n). Stage 2
+ * is the prime pairing stage 2 of the same class.
+ * </p>
+ *
+ * <p>
+ * With the start v = 2/7, v<sup>2</sup> - 4 is a non residue for only about
+ * half of the primes p. For the others b is in the field of p elements and
+ * the test finds p when p-1 is smooth instead, which is why this is run after
+ * {@link PollardPMinusOne} and not in place of it.
+ * </p>
+ *
+ * <p>
+ * <a href="http://en.wikipedia.org/wiki/Williams%27s_p_%2B_1_algorithm">
+ * http://en.wikipedia.org/wiki/Williams%27s_p_%2B_1_algorithm </a>
+ * </p>
+ *
+ * @author Ron Horner
+ */
+public class WilliamsPPlusOne {
+
+    /** The numerator of the starting value v */
+    private static final int START_NUMERATOR = 2;
+
+    /** The denominator of the starting value v */
+    private static final int START_DENOMINATOR = 7;
+
+    /**
+     * Looks for a factor of n.
+     *
+     * @param n
+     *            an odd composite of at most {@link MontgomeryContext#MAX_BITS}
+     *            bits
+     * @param b1
+     *            the stage 1 bound, at least 11
+     * @param b2
+     *            the stage 2 bound, no stage 2 when it is at most b1
+     * @return a proper factor of n, or null if none was found
+     */
+    public BigInteger findFactor(BigInteger n, long b1, long b2) {
+        if (!n.testBit(0) || n.bitLength() < 2 || n.bitLength() > MontgomeryContext.MAX_BITS) {
+            throw new IllegalArgumentException("The p+1 method can not factor " + n);
+        }
+        if (b1 < 11 || b2 > SegmentedSieve.MAX_BOUND) {
+            throw new IllegalArgumentException("Invalid bounds B1 = " + b1 + ", B2 = " + b2);
+        }
+        BigInteger seven = BigInteger.valueOf(START_DENOMINATOR);
+        BigInteger g = seven.gcd(n);
+        if (!g.equals(BigInteger.ONE)) {
+            return g.equals(n) ? null : g;
+        }
+        MontgomeryContext context = new MontgomeryContext(n);
+        LucasChain chain = new LucasChain(context);
+        long[] v = context.newElement();
+        context.toMontgomery(BigInteger.valueOf(START_NUMERATOR).multiply(seven.modInverse(n)), v);
+
+        PrimeIterator primes = new PrimeIterator(2, b1);
+        for (long p = primes.nextPrime(); p > 0; p = primes.nextPrime()) {
+            long q = p;
+            while (q <= b1 / p) {
+                q *= p;
+            }
+            chain.power(v, q, v);
+        }
+        g = chain.gcdMinusTwo(v);
+        if (!g.equals(BigInteger.ONE)) {
+            return g.equals(n) ? null : g;
+        }
+        if (b2 <= b1) {
+            return null;
+        }
+        g = chain.stageTwo(v, b1, b2);
+        return g.equals(BigInteger.ONE) || g.equals(n) ? null : g;
+    }
+}